@@ -0,0 +1,42 @@
+package ru.stroy1click.user.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.http.ProblemDetail;
+import ru.stroy1click.user.controller.AdviceController;
+import ru.stroy1click.user.exception.NotFoundException;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdviceControllerBenchmark {
+
+    private AdviceController adviceController;
+
+    private NotFoundException notFoundException;
+
+    @Setup
+    public void setUp() {
+        ResourceBundleMessageSource messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        messageSource.setDefaultEncoding("UTF-8");
+
+        this.adviceController = new AdviceController(messageSource);
+        this.notFoundException = new NotFoundException("Пользователь с 1 id не найден");
+    }
+
+    @Benchmark
+    public ProblemDetail notFound() {
+        return this.adviceController.handleException(this.notFoundException);
+    }
+
+    @Benchmark
+    public ProblemDetail notFoundWithException() {
+        return this.adviceController.handleException(new NotFoundException("Пользователь с 1 id не найден"));
+    }
+}
@@ -0,0 +1,66 @@
+package ru.stroy1click.user.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import ru.stroy1click.user.cache.CompactCacheSerializer;
+import ru.stroy1click.user.config.CacheConfig;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.model.Role;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Сериализация значений кэша: json (GenericJackson2JsonRedisSerializer) против CompactCacheSerializer.
+ * {@code user} - один UserDto, {@code search} - список из 20 UserSummaryDto (сжимается deflate).
+ * Размер записи в байтах печатается в setUp.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheSerializationBenchmark {
+
+    @Param({"json", "binary"})
+    private String format;
+
+    @Param({"user", "search"})
+    private String value;
+
+    private RedisSerializer<Object> serializer;
+
+    private Object cacheValue;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() {
+        RedisSerializer<Object> jsonSerializer = new CacheConfig().cacheValueSerializer();
+        this.serializer = "json".equals(this.format)
+                ? jsonSerializer
+                : new CompactCacheSerializer(jsonSerializer, 512);
+        this.cacheValue = "user".equals(this.value)
+                ? new UserDto(1L, "Mike", "Thompson", "mike_thompson@gmail.com",
+                        "{bcrypt}$2a$10$8rOJ5FzrDa4Yw0T8yPTWxOnh0uR6WD/c5.Dx3S/V0yHBSbR1j3lJm", true, Role.ROLE_USER, null)
+                : new ArrayList<>(LongStream.rangeClosed(1, 20)
+                        .mapToObj(id -> new UserSummaryDto(id, "Mike", "Thompson", "mike_thompson" + id + "@gmail.com",
+                                true, Role.ROLE_USER))
+                        .toList());
+        this.serialized = this.serializer.serialize(this.cacheValue);
+        System.out.printf("%n%s/%s: %d bytes per entry%n", this.format, this.value, this.serialized.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return this.serializer.serialize(this.cacheValue);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return this.serializer.deserialize(this.serialized);
+    }
+}
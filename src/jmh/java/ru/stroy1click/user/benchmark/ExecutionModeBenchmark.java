@@ -0,0 +1,164 @@
+package ru.stroy1click.user.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+import ru.stroy1click.user.Stroy1ClickUserServiceApplication;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Режимы исполнения на настоящем пути запроса: приложение целиком (Tomcat, Hikari на 10 соединений, Redis,
+ * PasswordHashService, в virtual - ещё {@link ru.stroy1click.user.datasource.ConnectionBulkheadDataSource})
+ * с spring.threads.virtual.enabled false и true. Postgres и Redis - Testcontainers, нужен Docker.
+ * Вызов - всплеск из concurrency одновременных HTTP-запросов к эндпоинту: get - чтение через кэш,
+ * page - keyset-страница прямо из БД, create - хэширование и вставка. SampleTime даёт p99 всплеска,
+ * Throughput - всплески в секунду, {@link Responses} - сколько запросов отклонено (503) или упало.
+ * Лимитеры выключены: меряем сам режим исполнения, а не сброс нагрузки перед ним.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    @Param({"false", "true"})
+    private boolean virtual;
+
+    @Param({"get", "page", "create"})
+    private String endpoint;
+
+    @Param({"1000"})
+    private int concurrency;
+
+    @Param({"10000"})
+    private int rows;
+
+    private PostgreSQLContainer<?> postgres;
+
+    private GenericContainer<?> redis;
+
+    private ConfigurableApplicationContext context;
+
+    private ExecutorService clientExecutor;
+
+    private HttpClient client;
+
+    private String baseUrl;
+
+    private final AtomicLong created = new AtomicLong();
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Responses {
+
+        public long rejected;
+
+        public long failed;
+    }
+
+    @Setup
+    public void setUp() {
+        this.postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:15.13"));
+        this.redis = new GenericContainer<>(DockerImageName.parse("redis:6.2")).withExposedPorts(6379);
+        this.postgres.start();
+        this.redis.start();
+
+        this.context = new SpringApplicationBuilder(Stroy1ClickUserServiceApplication.class).run(
+                "--server.port=0",
+                "--spring.threads.virtual.enabled=" + this.virtual,
+                "--spring.datasource.url=" + this.postgres.getJdbcUrl(),
+                "--spring.datasource.username=" + this.postgres.getUsername(),
+                "--spring.datasource.password=" + this.postgres.getPassword(),
+                "--spring.flyway.url=" + this.postgres.getJdbcUrl(),
+                "--spring.flyway.user=" + this.postgres.getUsername(),
+                "--spring.flyway.password=" + this.postgres.getPassword(),
+                "--spring.data.redis.host=" + this.redis.getHost(),
+                "--spring.data.redis.port=" + this.redis.getMappedPort(6379),
+                "--rate-limit.enabled=false",
+                "--concurrency-limit.enabled=false",
+                "--otel.sdk.disabled=true",
+                "--logging.level.root=WARN"
+        );
+        //id явно: последовательность идёт шагом 50, а get и page выбирают id из 1..rows
+        JdbcTemplate jdbcTemplate = this.context.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("""
+                insert into account.users(id, first_name, last_name, email, password, role, email_confirmed)
+                select g, 'First' || g, 'Last' || g, 'user' || g || '@mail.com',
+                       '{bcrypt}$2a$10$abcdefghijklmnopqrstuv', 'ROLE_USER', g %% 2 = 0
+                from generate_series(1, %d) g""".formatted(this.rows));
+        jdbcTemplate.execute("select setval('account.users_id_seq', %d)".formatted(this.rows));
+        jdbcTemplate.execute("analyze account.users");
+
+        //клиент не должен быть узким местом: запросы всплеска отправляются и ждут ответа без пула потоков
+        this.clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(this.clientExecutor)
+                .build();
+        this.baseUrl = "http://localhost:" + this.context.getEnvironment().getProperty("local.server.port") + "/api/v1/users";
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.client.close();
+        this.clientExecutor.shutdownNow();
+        this.context.close();
+        this.redis.stop();
+        this.postgres.stop();
+    }
+
+    @Benchmark
+    public int burst(Responses responses) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Integer>[] statuses = new CompletableFuture[this.concurrency];
+        for(int i = 0; i < this.concurrency; i++){
+            statuses[i] = this.client.sendAsync(request(), HttpResponse.BodyHandlers.discarding())
+                    .thenApply(HttpResponse::statusCode)
+                    .exceptionally(e -> -1);
+        }
+
+        int ok = 0;
+        for(CompletableFuture<Integer> status : statuses){
+            int code = status.join();
+            if(code >= 200 && code < 300){
+                ok++;
+            } else if(code == 503){
+                responses.rejected++;
+            } else {
+                responses.failed++;
+            }
+        }
+        return ok;
+    }
+
+    private HttpRequest request() {
+        long id = ThreadLocalRandom.current().nextLong(1, this.rows + 1);
+        return switch (this.endpoint) {
+            case "get" -> HttpRequest.newBuilder(URI.create(this.baseUrl + "/" + id)).GET().build();
+            case "page" -> HttpRequest.newBuilder(URI.create(this.baseUrl + "?limit=20&afterId=" + id)).GET().build();
+            case "create" -> HttpRequest.newBuilder(URI.create(this.baseUrl))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("""
+                            {"firstName":"Bench","lastName":"Mark","email":"bench%d@mail.com","password":"password",\
+                            "emailConfirmed":false,"role":"ROLE_USER"}""".formatted(this.created.incrementAndGet())))
+                    .build();
+            default -> throw new IllegalArgumentException(this.endpoint);
+        };
+    }
+}
@@ -0,0 +1,122 @@
+package ru.stroy1click.user.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import org.openjdk.jmh.annotations.*;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.logging.SamplingTurboFilter;
+import ru.stroy1click.user.model.Role;
+import ru.stroy1click.user.util.LogUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость логирования на запрос в потоке запроса. sync - прежняя схема: всё на INFO,
+ * синхронная запись, UserDto целиком через toString. async - выборка чтений
+ * ({@link SamplingTurboFilter}), AsyncAppender без блокировки и поля вместо форматирования.
+ * Вместо консоли пишем в файл, чтобы не засорять вывод JMH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggingBenchmark {
+
+    @Param({"sync", "async"})
+    private String pipeline;
+
+    private LoggerContext loggerContext;
+
+    private Logger logger;
+
+    private Path file;
+
+    private boolean sync;
+
+    private UserDto userDto;
+
+    private long id;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.sync = "sync".equals(this.pipeline);
+        this.file = Files.createTempFile("logging-benchmark", ".log");
+        this.loggerContext = new LoggerContext();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(this.loggerContext);
+        encoder.setPattern(this.sync
+                ? "%d{HH:mm:ss.SSS} %-5level [%15.15t] %-30.30logger{30} : %m%n"
+                : "%d{HH:mm:ss.SSS} %-5level [%15.15t] %-30.30logger{30} : %m %kvp%n");
+        encoder.start();
+
+        FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+        fileAppender.setContext(this.loggerContext);
+        fileAppender.setFile(this.file.toString());
+        fileAppender.setEncoder(encoder);
+        fileAppender.start();
+
+        Appender<ILoggingEvent> appender = fileAppender;
+        if(!this.sync){
+            SamplingTurboFilter filter = new SamplingTurboFilter();
+            filter.setContext(this.loggerContext);
+            filter.addLogger("ru.stroy1click.user.service.impl.UserServiceImpl");
+            filter.setLevel("DEBUG");
+            filter.setEvery(100);
+            filter.start();
+            this.loggerContext.addTurboFilter(filter);
+
+            AsyncAppender asyncAppender = new AsyncAppender();
+            asyncAppender.setContext(this.loggerContext);
+            asyncAppender.setQueueSize(8192);
+            asyncAppender.setNeverBlock(true);
+            asyncAppender.addAppender(fileAppender);
+            asyncAppender.start();
+            appender = asyncAppender;
+        }
+
+        Logger root = this.loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+        root.addAppender(appender);
+        this.logger = this.loggerContext.getLogger("ru.stroy1click.user.service.impl.UserServiceImpl");
+
+        this.userDto = new UserDto(1L, "Mike", "Thompson", "mike_thompson@gmail.com",
+                "password123", true, Role.ROLE_USER, 3L);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.loggerContext.stop();
+        Files.deleteIfExists(this.file);
+    }
+
+    //get и getByEmail: самые частые вызовы
+    @Benchmark
+    public void read() {
+        long id = this.id++;
+        if(this.sync){
+            this.logger.info("get {}", id);
+        } else {
+            this.logger.atDebug().addKeyValue("id", id).log("get");
+        }
+    }
+
+    @Benchmark
+    public void write() {
+        if(this.sync){
+            this.logger.info("create {}", this.userDto);
+        } else {
+            this.logger.atInfo().addKeyValue("email", LogUtils.maskEmail(this.userDto.getEmail())).log("create");
+        }
+    }
+}
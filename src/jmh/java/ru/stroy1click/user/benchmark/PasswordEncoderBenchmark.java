@@ -0,0 +1,36 @@
+package ru.stroy1click.user.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import ru.stroy1click.user.config.PasswordEncoderConfig;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+
+    private PasswordEncoder passwordEncoder;
+
+    private String encoded;
+
+    @Setup
+    public void setUp() {
+        this.passwordEncoder = new PasswordEncoderConfig().passwordEncoder();
+        this.encoded = this.passwordEncoder.encode("password123");
+    }
+
+    @Benchmark
+    public String encode() {
+        return this.passwordEncoder.encode("password123");
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return this.passwordEncoder.matches("password123", this.encoded);
+    }
+}
@@ -0,0 +1,91 @@
+package ru.stroy1click.user.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+import ru.stroy1click.user.controller.AdviceController;
+import ru.stroy1click.user.controller.UserController;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.model.Role;
+import ru.stroy1click.user.service.UserEventService;
+import ru.stroy1click.user.service.UserExportService;
+import ru.stroy1click.user.service.UserImportService;
+import ru.stroy1click.user.service.UserService;
+import ru.stroy1click.user.util.ETagUtils;
+import ru.stroy1click.user.validator.UserCreateValidator;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserControllerBenchmark {
+
+    private MockMvc mockMvc;
+
+    private byte[] createBody;
+
+    @Setup
+    public void setUp() throws Exception {
+        ResourceBundleMessageSource messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        messageSource.setDefaultEncoding("UTF-8");
+        LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+        validator.setValidationMessageSource(messageSource);
+        validator.afterPropertiesSet();
+
+        UserDto userDto = new UserDto(1L, "Mike", "Thompson", "mike_thompson@gmail.com",
+                "password123", false, Role.ROLE_USER, 3L);
+        //stubOnly: иначе mockito копит все вызовы и бенчмарк меряет GC
+        UserService userService = Mockito.mock(UserService.class, Mockito.withSettings().stubOnly());
+        Mockito.when(userService.get(1L)).thenReturn(userDto);
+        Mockito.when(userService.create(any())).thenReturn(userDto);
+
+        this.mockMvc = MockMvcBuilders
+                .standaloneSetup(new UserController(
+                        userService,
+                        Mockito.mock(UserImportService.class, Mockito.withSettings().stubOnly()),
+                        Mockito.mock(UserExportService.class, Mockito.withSettings().stubOnly()),
+                        Mockito.mock(UserEventService.class, Mockito.withSettings().stubOnly()),
+                        Mockito.mock(UserCreateValidator.class, Mockito.withSettings().stubOnly()),
+                        messageSource
+                ))
+                .setControllerAdvice(new AdviceController(messageSource))
+                .setValidator(validator)
+                .build();
+        this.createBody = new ObjectMapper().writeValueAsBytes(userDto);
+    }
+
+    @Benchmark
+    public MvcResult getResponse() throws Exception {
+        return this.mockMvc.perform(get("/api/v1/users/1")).andReturn();
+    }
+
+    //ETag совпал: 304 без сериализации тела
+    @Benchmark
+    public MvcResult getNotModifiedResponse() throws Exception {
+        return this.mockMvc.perform(get("/api/v1/users/1").header(HttpHeaders.IF_NONE_MATCH, ETagUtils.of(1L, 3L))).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult createRequest() throws Exception {
+        return this.mockMvc.perform(post("/api/v1/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(this.createBody))
+                .andReturn();
+    }
+}
@@ -0,0 +1,66 @@
+package ru.stroy1click.user.benchmark;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.entity.User;
+import ru.stroy1click.user.mapper.UserMapper;
+import ru.stroy1click.user.mapper.impl.ModelMapperUserMapper;
+import ru.stroy1click.user.mapper.impl.UserMapperImpl;
+import ru.stroy1click.user.model.Role;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserMapperBenchmark {
+
+    @Param({"manual", "modelmapper"})
+    private String mapper;
+
+    private UserMapper userMapper;
+
+    private User user;
+
+    private UserDto userDto;
+
+    private List<User> users;
+
+    @Setup
+    public void setUp() {
+        this.userMapper = "manual".equals(this.mapper)
+                ? new UserMapperImpl()
+                : new ModelMapperUserMapper(new ModelMapper());
+
+        this.user = new User(1L, "Mike", "Thompson", "mike_thompson@gmail.com",
+                "{bcrypt}$2a$10$abcdefghijklmnopqrstuv", true, Role.ROLE_USER, null);
+        this.userDto = new UserDto(1L, "Mike", "Thompson", "mike_thompson@gmail.com",
+                "password123", true, Role.ROLE_USER, null);
+        this.users = new ArrayList<>();
+        for(long i = 0; i < 200; i++){
+            this.users.add(new User(i, "Mike", "Thompson", "mike" + i + "@gmail.com",
+                    "{bcrypt}$2a$10$abcdefghijklmnopqrstuv", true, Role.ROLE_USER, null));
+        }
+    }
+
+    @Benchmark
+    public UserDto toDto() {
+        return this.userMapper.toDto(this.user);
+    }
+
+    @Benchmark
+    public User toEntity() {
+        return this.userMapper.toEntity(this.userDto);
+    }
+
+    @Benchmark
+    public List<UserDto> toDtoList() {
+        return this.userMapper.toDto(this.users);
+    }
+}
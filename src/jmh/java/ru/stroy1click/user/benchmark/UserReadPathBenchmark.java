@@ -0,0 +1,133 @@
+package ru.stroy1click.user.benchmark;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.flywaydb.core.Flyway;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.*;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.entity.User;
+import ru.stroy1click.user.mapper.UserMapper;
+import ru.stroy1click.user.mapper.impl.UserMapperImpl;
+import ru.stroy1click.user.repository.UserRepository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение пользователя при промахе кэша в PostgreSQL (Testcontainers, нужен Docker).
+ * entity - прежний путь: {@link User} в persistence context и копия через {@link UserMapper};
+ * projection - {@link UserRepository#FIND_DTO_BY_ID} сразу в {@link UserDto}. Транзакция на каждое
+ * чтение настроена как readOnly-транзакция Spring. Аллокации на вызов: {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserReadPathBenchmark {
+
+    @Param({"10000"})
+    private int rows;
+
+    private PostgreSQLContainer<?> postgres;
+
+    private LocalContainerEntityManagerFactoryBean factoryBean;
+
+    private EntityManagerFactory entityManagerFactory;
+
+    private UserMapper userMapper;
+
+    @Setup
+    public void setUp() throws SQLException {
+        this.postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:15.13"));
+        this.postgres.start();
+
+        PGSimpleDataSource dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(this.postgres.getJdbcUrl());
+        dataSource.setUser(this.postgres.getUsername());
+        dataSource.setPassword(this.postgres.getPassword());
+
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        try(Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()){
+            //id явно: последовательность идёт шагом 50, а чтения выбирают id из 1..rows
+            statement.execute("""
+                    insert into account.users(id, first_name, last_name, email, password, role, email_confirmed)
+                    select g, 'First' || g, 'Last' || g, 'user' || g || '@mail.com',
+                           '{bcrypt}$2a$10$abcdefghijklmnopqrstuv', 'ROLE_USER', g %% 2 = 0
+                    from generate_series(1, %d) g""".formatted(this.rows));
+            statement.execute("select setval('account.users_id_seq', %d)".formatted(this.rows));
+            statement.execute("analyze account.users");
+        }
+
+        this.factoryBean = new LocalContainerEntityManagerFactoryBean();
+        this.factoryBean.setDataSource(dataSource);
+        this.factoryBean.setPackagesToScan("ru.stroy1click.user.entity");
+        this.factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        this.factoryBean.setJpaPropertyMap(Map.of(
+                "hibernate.physical_naming_strategy", "org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy",
+                "hibernate.hbm2ddl.auto", "none"
+        ));
+        this.factoryBean.afterPropertiesSet();
+        this.entityManagerFactory = this.factoryBean.getObject();
+        this.userMapper = new UserMapperImpl();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.factoryBean.destroy();
+        this.postgres.stop();
+    }
+
+    @Benchmark
+    public UserDto entity() {
+        EntityManager entityManager = begin();
+        try {
+            return this.userMapper.toDto(entityManager.find(User.class, nextId()));
+        } finally {
+            commit(entityManager);
+        }
+    }
+
+    @Benchmark
+    public UserDto projection() {
+        EntityManager entityManager = begin();
+        try {
+            return entityManager.createQuery(UserRepository.FIND_DTO_BY_ID, UserDto.class)
+                    .setParameter("id", nextId())
+                    .getSingleResult();
+        } finally {
+            commit(entityManager);
+        }
+    }
+
+    private long nextId() {
+        return ThreadLocalRandom.current().nextLong(1, this.rows + 1);
+    }
+
+    //как HibernateJpaDialect для @Transactional(readOnly = true)
+    private EntityManager begin() {
+        EntityManager entityManager = this.entityManagerFactory.createEntityManager();
+        Session session = entityManager.unwrap(Session.class);
+        session.setDefaultReadOnly(true);
+        session.setHibernateFlushMode(FlushMode.MANUAL);
+        entityManager.getTransaction().begin();
+        return entityManager;
+    }
+
+    private void commit(EntityManager entityManager) {
+        entityManager.getTransaction().commit();
+        entityManager.close();
+    }
+}
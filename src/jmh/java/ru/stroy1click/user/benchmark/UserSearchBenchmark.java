@@ -0,0 +1,119 @@
+package ru.stroy1click.user.benchmark;
+
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+import ru.stroy1click.user.repository.impl.UserListingRepositoryImpl;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск пользователей на таблице из {@code rows} строк в PostgreSQL (Testcontainers, нужен Docker).
+ * Запросы те же, что в {@link UserListingRepositoryImpl}. В setUp план каждого запроса проверяется
+ * через EXPLAIN: если в нём есть Seq Scan по account.users, бенчмарк падает.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserSearchBenchmark {
+
+    @Param({"2000000"})
+    private int rows;
+
+    @Param({"20"})
+    private int limit;
+
+    private PostgreSQLContainer<?> postgres;
+
+    private Connection connection;
+
+    private PreparedStatement prefixSearch;
+
+    private PreparedStatement substringSearch;
+
+    @Setup
+    public void setUp() throws SQLException {
+        this.postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:15.13"));
+        this.postgres.start();
+
+        Flyway.configure()
+                .dataSource(this.postgres.getJdbcUrl(), this.postgres.getUsername(), this.postgres.getPassword())
+                .load()
+                .migrate();
+
+        this.connection = DriverManager.getConnection(
+                this.postgres.getJdbcUrl(), this.postgres.getUsername(), this.postgres.getPassword()
+        );
+        try(Statement statement = this.connection.createStatement()){
+            statement.execute("""
+                    insert into account.users(first_name, last_name, email, password, role, email_confirmed)
+                    select initcap(substr(md5(g::text), 1, 8)),
+                           initcap(substr(md5((g * 7)::text), 1, 10)),
+                           substr(md5((g * 13)::text), 1, 12) || g || '@mail.com',
+                           'password',
+                           'ROLE_USER',
+                           g %% 2 = 0
+                    from generate_series(1, %d) g""".formatted(this.rows));
+            statement.execute("analyze account.users");
+        }
+
+        this.prefixSearch = this.connection.prepareStatement(UserListingRepositoryImpl.PREFIX_SEARCH_SQL);
+        bind(this.prefixSearch, "ab%", "ab%", "ab%", "ab", "ab", "ab", this.limit);
+        this.substringSearch = this.connection.prepareStatement(UserListingRepositoryImpl.SUBSTRING_SEARCH_SQL);
+        bind(this.substringSearch, "%4f2a%", "%4f2a%", "%4f2a%", "4f2a%", "4f2a%", "4f2a%", "4f2a", "4f2a", "4f2a", this.limit);
+
+        assertNoSeqScan(UserListingRepositoryImpl.PREFIX_SEARCH_SQL, "ab%", "ab%", "ab%", "ab", "ab", "ab", this.limit);
+        assertNoSeqScan(UserListingRepositoryImpl.SUBSTRING_SEARCH_SQL,
+                "%4f2a%", "%4f2a%", "%4f2a%", "4f2a%", "4f2a%", "4f2a%", "4f2a", "4f2a", "4f2a", this.limit);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        this.connection.close();
+        this.postgres.stop();
+    }
+
+    @Benchmark
+    public int prefixSearch() throws SQLException {
+        return count(this.prefixSearch);
+    }
+
+    @Benchmark
+    public int substringSearch() throws SQLException {
+        return count(this.substringSearch);
+    }
+
+    private int count(PreparedStatement statement) throws SQLException {
+        int count = 0;
+        try(ResultSet resultSet = statement.executeQuery()){
+            while (resultSet.next()) count++;
+        }
+        return count;
+    }
+
+    private void assertNoSeqScan(String sql, Object... values) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try(PreparedStatement explain = this.connection.prepareStatement("explain " + sql)){
+            bind(explain, values);
+            try(ResultSet resultSet = explain.executeQuery()){
+                while (resultSet.next()) plan.add(resultSet.getString(1));
+            }
+        }
+        if(plan.stream().anyMatch(line -> line.contains("Seq Scan"))){
+            throw new IllegalStateException("Search falls back to a sequential scan:\n" + String.join("\n", plan));
+        }
+    }
+
+    private static void bind(PreparedStatement statement, Object... values) throws SQLException {
+        for(int i = 0; i < values.length; i++){
+            statement.setObject(i + 1, values[i]);
+        }
+    }
+}
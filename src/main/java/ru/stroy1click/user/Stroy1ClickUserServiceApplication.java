@@ -2,10 +2,14 @@ package ru.stroy1click.user;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EnableCaching
 @SpringBootApplication
+@EnableScheduling
+@ConfigurationPropertiesScan
 public class Stroy1ClickUserServiceApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,154 @@
+package ru.stroy1click.user.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Пакетные операции над несколькими {@link TwoLevelCache}: один MGET на все ключи всех кэшей,
+ * запись промахов и удаление ключей одним pipeline.
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheBatchOperations {
+
+    private final CacheManager cacheManager;
+
+    private final RedisConnectionFactory redisConnectionFactory;
+
+    private final CacheInvalidationPublisher cacheInvalidationPublisher;
+
+    private final CacheVersionGuard cacheVersionGuard;
+
+    public Map<String, Map<Object, Object>> multiGet(Map<String, ? extends Collection<?>> keysByCache){
+        Map<String, Map<Object, Object>> result = new HashMap<>();
+        List<TwoLevelCache> redisCaches = new ArrayList<>();
+        List<Object> redisKeys = new ArrayList<>();
+
+        keysByCache.forEach((cacheName, keys) -> {
+            TwoLevelCache cache = getCache(cacheName);
+            Map<Object, Object> hits = new HashMap<>();
+            result.put(cacheName, hits);
+            for(Object key : new LinkedHashSet<>(keys)){
+                Object localValue = cache.getLocal(key);
+                if(localValue != null){
+                    hits.put(key, localValue);
+                } else {
+                    redisCaches.add(cache);
+                    redisKeys.add(key);
+                }
+            }
+        });
+        if(redisKeys.isEmpty()) return result;
+
+        byte[][] rawKeys = new byte[redisKeys.size()][];
+        for(int i = 0; i < redisKeys.size(); i++){
+            rawKeys[i] = redisCaches.get(i).toRedisKey(redisKeys.get(i));
+        }
+
+        List<byte[]> rawValues;
+        try(RedisConnection connection = this.redisConnectionFactory.getConnection()){
+            rawValues = connection.stringCommands().mGet(rawKeys);
+        }
+        if(rawValues == null) return result;
+
+        for(int i = 0; i < rawValues.size(); i++){
+            byte[] rawValue = rawValues.get(i);
+            if(rawValue == null) continue;
+
+            TwoLevelCache cache = redisCaches.get(i);
+            Object stored = cache.getRedisCacheConfiguration().getValueSerializationPair()
+                    .read(ByteBuffer.wrap(rawValue));
+            if(stored != null){
+                cache.putLocal(redisKeys.get(i), stored);
+                result.get(cache.getName()).put(redisKeys.get(i), CacheEntry.unwrap(stored));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * В кэшах с проверкой версий значение, прочитанное до коммита более новой версии, не записывается
+     * ни в Redis, ни в L1, см. {@link CacheVersionGuard}.
+     */
+    public void multiPut(Map<String, ? extends Map<?, ?>> entriesByCache){
+        if(entriesByCache.values().stream().allMatch(Map::isEmpty)) return;
+
+        List<TwoLevelCache> caches = new ArrayList<>();
+        List<Object> keys = new ArrayList<>();
+        List<CacheEntry> written = new ArrayList<>();
+        List<Object> results;
+        try(RedisConnection connection = this.redisConnectionFactory.getConnection()){
+            connection.openPipeline();
+            entriesByCache.forEach((cacheName, entries) -> {
+                TwoLevelCache cache = getCache(cacheName);
+                entries.forEach((key, value) -> {
+                    CacheEntry entry = cache.newEntry(value);
+                    byte[] rawKey = cache.toRedisKey(key);
+                    byte[] rawValue = cache.toRedisValue(entry);
+                    Duration ttl = cache.getTtl(key, entry);
+                    if(cache.isVersioned()){
+                        this.cacheVersionGuard.put(connection, rawKey, rawValue, ttl, CacheVersionGuard.versionOf(value));
+                    } else {
+                        connection.stringCommands().set(
+                                rawKey,
+                                rawValue,
+                                ttl.isZero() || ttl.isNegative() ? Expiration.persistent() : Expiration.from(ttl),
+                                RedisStringCommands.SetOption.upsert()
+                        );
+                    }
+                    caches.add(cache);
+                    keys.add(key);
+                    written.add(entry);
+                });
+            });
+            results = connection.closePipeline();
+        }
+
+        for(int i = 0; i < written.size(); i++){
+            //скрипт версии отвечает 0, если значение устарело; SET отвечает true
+            if(i < results.size() && results.get(i) instanceof Long accepted && accepted == 0) continue;
+            caches.get(i).putLocal(keys.get(i), written.get(i));
+        }
+    }
+
+    /**
+     * Удаляет ключи из Redis и L1 и рассылает инвалидацию остальным узлам в том же pipeline.
+     */
+    public void multiEvict(Map<String, ? extends Collection<?>> keysByCache){
+        if(keysByCache.values().stream().allMatch(Collection::isEmpty)) return;
+
+        byte[] channel = this.cacheInvalidationPublisher.getChannel().getBytes(StandardCharsets.UTF_8);
+        try(RedisConnection connection = this.redisConnectionFactory.getConnection()){
+            connection.openPipeline();
+            keysByCache.forEach((cacheName, keys) -> {
+                TwoLevelCache cache = getCache(cacheName);
+                for(Object key : keys){
+                    connection.keyCommands().del(cache.toRedisKey(key));
+                    connection.publish(channel, this.cacheInvalidationPublisher.toMessage(cacheName, String.valueOf(key))
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+            });
+            connection.closePipeline();
+        }
+        //после удаления из Redis, иначе промах L1 успеет прочитать старое значение обратно
+        keysByCache.forEach((cacheName, keys) -> {
+            TwoLevelCache cache = getCache(cacheName);
+            keys.forEach(key -> cache.evictLocal(String.valueOf(key)));
+        });
+    }
+
+    private TwoLevelCache getCache(String cacheName){
+        if(this.cacheManager.getCache(cacheName) instanceof TwoLevelCache cache) return cache;
+        throw new IllegalStateException("Cache %s does not support batch operations".formatted(cacheName));
+    }
+}
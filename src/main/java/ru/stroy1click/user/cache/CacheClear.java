@@ -1,11 +1,19 @@
 package ru.stroy1click.user.cache;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.stroy1click.user.util.LogUtils;
 
+/**
+ * Инвалидация после коммита: до него параллельное чтение успело бы вернуть в кэш старые данные.
+ * Вне транзакции ключ удаляется сразу.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
@@ -13,19 +21,52 @@ public class CacheClear {
 
     private final CacheManager cacheManager;
 
-    public void clearUserById(Long id){ //check usages
-        log.info("clearUser");
-        deleteCache("user",id);
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param version версия, записанная транзакцией: значения старше неё в кэш больше не попадут
+     */
+    public void clearUserById(Long id, long version){
+        log.atDebug().addKeyValue("id", id).addKeyValue("version", version).log("clearUser");
+        afterCommit(() -> deleteCache(UserCache.USER, id, version));
+    }
+
+    //пользователь удалён: устарели все значения, прочитанные до коммита
+    public void clearUserById(Long id){
+        log.atDebug().addKeyValue("id", id).log("clearUser");
+        afterCommit(() -> deleteCache(UserCache.USER, id, CacheVersionGuard.ANY));
     }
 
+    //в индексе email -> id версий нет
     public void clearEmail(String email){
-        log.info("clearEmail {}", email);
-        deleteCache("email",email);
+        log.atDebug().addKeyValue("email", LogUtils.maskEmail(email)).log("clearEmail");
+        afterCommit(() -> deleteCache(UserCache.EMAIL, email, CacheVersionGuard.ANY));
+    }
+
+    private void afterCommit(Runnable eviction){
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            eviction.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                //транзакция уже закоммичена, ошибка Redis не должна превращаться в ошибку запроса
+                try {
+                    eviction.run();
+                } catch (RuntimeException e) {
+                    log.error("Failed to evict cache after commit", e);
+                }
+            }
+        });
     }
 
-    private void deleteCache(String key, Object value){
+    private void deleteCache(String key, Object value, long minVersion){
         Cache cache = this.cacheManager.getCache(key);
-        if(cache != null){
+        this.meterRegistry.counter("cache.invalidations", "cache", key).increment();
+        if(cache instanceof TwoLevelCache twoLevelCache){
+            twoLevelCache.evict(value, minVersion);
+        } else if(cache != null){
             cache.evict(value);
         }
     }
@@ -0,0 +1,31 @@
+package ru.stroy1click.user.cache;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.io.Serializable;
+import java.time.Duration;
+
+/**
+ * Значение кэша вместе со временем истечения (epoch millis) и длительностью загрузки.
+ * TTL записи в Redis считается из {@code expiresAt}, поэтому оба уровня истекают одновременно.
+ */
+public record CacheEntry(Object value, long expiresAt, long loadMicros) implements Serializable {
+
+    @JsonIgnore
+    public Duration remainingTtl() {
+        //нулевой TTL RedisCache считает вечным
+        return Duration.ofMillis(Math.max(this.expiresAt - System.currentTimeMillis(), 1));
+    }
+
+    @JsonIgnore
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= this.expiresAt;
+    }
+
+    /**
+     * Записи, сохранённые до появления обёртки, возвращаются как есть.
+     */
+    public static Object unwrap(Object stored) {
+        return stored instanceof CacheEntry entry ? entry.value() : stored;
+    }
+}
@@ -0,0 +1,50 @@
+package ru.stroy1click.user.cache;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Срок жизни записей одного кэша: TTL со случайным разбросом, чтобы записи, попавшие в кэш одной волной,
+ * не истекали одновременно, и вероятностное раннее обновление (XFetch): чем ближе истечение и чем дольше
+ * грузилось значение, тем выше шанс, что очередное чтение обновит запись заранее.
+ */
+public class CacheExpiry {
+
+    private final Duration ttl;
+
+    private final Duration negativeTtl;
+
+    private final double jitter;
+
+    private final double refreshAhead;
+
+    /**
+     * @param negativeTtl  TTL для {@link CacheMarker#NOT_FOUND}
+     * @param jitter       доля TTL, на которую он случайно меняется в обе стороны
+     * @param refreshAhead коэффициент раннего обновления, 0 - выключено
+     */
+    public CacheExpiry(Duration ttl, Duration negativeTtl, double jitter, double refreshAhead) {
+        if(jitter < 0 || jitter >= 1) throw new IllegalArgumentException("Cache TTL jitter must be in [0, 1)");
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.jitter = jitter;
+        this.refreshAhead = refreshAhead;
+    }
+
+    public CacheEntry entry(Object value, long loadMicros) {
+        long ttlMillis = (value == CacheMarker.NOT_FOUND ? this.negativeTtl : this.ttl).toMillis();
+        if(this.jitter > 0){
+            ttlMillis += (long) (ttlMillis * this.jitter * ThreadLocalRandom.current().nextDouble(-1, 1));
+        }
+        return new CacheEntry(value, System.currentTimeMillis() + Math.max(ttlMillis, 1), loadMicros);
+    }
+
+    public boolean shouldRefresh(CacheEntry entry) {
+        if(this.refreshAhead <= 0 || entry.loadMicros() <= 0) return false;
+
+        //-ln(u) при u из (0, 1]: обычно меньше единицы, изредка в разы больше
+        double gapMillis = -entry.loadMicros() / 1000.0 * this.refreshAhead
+                * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gapMillis >= entry.expiresAt();
+    }
+}
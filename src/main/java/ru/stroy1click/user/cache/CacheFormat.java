@@ -0,0 +1,8 @@
+package ru.stroy1click.user.cache;
+
+public enum CacheFormat {
+    //json с именами классов: удобно читать в redis-cli
+    JSON,
+    //CompactCacheSerializer
+    BINARY
+}
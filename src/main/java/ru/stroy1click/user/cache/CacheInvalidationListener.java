@@ -0,0 +1,52 @@
+package ru.stroy1click.user.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CacheInvalidationListener implements MessageListener {
+
+    private final CacheManager cacheManager;
+
+    private final CacheInvalidationPublisher cacheInvalidationPublisher;
+
+    private final ObjectMapper objectMapper;
+
+    private final EmailBloomFilter emailBloomFilter;
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        CacheInvalidationMessage invalidation;
+        try {
+            invalidation = this.objectMapper.readValue(message.getBody(), CacheInvalidationMessage.class);
+        } catch (IOException e) {
+            log.warn("Skipping malformed cache invalidation message", e);
+            return;
+        }
+        if(this.cacheInvalidationPublisher.isLocal(invalidation)) return;
+
+        if(EmailBloomFilter.NAME.equals(invalidation.cacheName())){
+            this.emailBloomFilter.putRemote(invalidation.key());
+            return;
+        }
+
+        Cache cache = this.cacheManager.getCache(invalidation.cacheName());
+        if(cache instanceof TwoLevelCache twoLevelCache){
+            if(invalidation.key() == null){
+                twoLevelCache.clearLocal();
+            } else {
+                twoLevelCache.evictLocal(invalidation.key());
+            }
+        }
+    }
+}
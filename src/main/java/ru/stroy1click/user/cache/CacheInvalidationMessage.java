@@ -0,0 +1,8 @@
+package ru.stroy1click.user.cache;
+
+/**
+ * Сообщение об инвалидации локального кэша, рассылаемое через Redis pub/sub.
+ * {@code key == null} означает очистку всего кэша.
+ */
+public record CacheInvalidationMessage(String origin, String cacheName, String key) {
+}
@@ -0,0 +1,73 @@
+package ru.stroy1click.user.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import ru.stroy1click.user.properties.CacheProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.UUID;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CacheInvalidationPublisher {
+
+    private static final String NODE_ID = UUID.randomUUID().toString();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final CacheProperties cacheProperties;
+
+    public void publish(String cacheName, String key){
+        try {
+            this.stringRedisTemplate.convertAndSend(this.cacheProperties.getInvalidationChannel(), toMessage(cacheName, key));
+        } catch (RuntimeException e) {
+            //локальные копии на других узлах всё равно истекут по local.ttl
+            log.warn("Failed to publish invalidation of {}::{}", cacheName, key, e);
+        }
+    }
+
+    /**
+     * Публикует сообщения по всем ключам одним pipeline.
+     */
+    public void publishAll(String cacheName, Collection<String> keys){
+        byte[] channel = this.cacheProperties.getInvalidationChannel().getBytes(StandardCharsets.UTF_8);
+        try {
+            this.stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for(String key : keys){
+                    connection.publish(channel, toMessage(cacheName, key).getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish {} keys of {}", keys.size(), cacheName, e);
+        }
+    }
+
+    /**
+     * Для публикации в общем pipeline вместе с удалением ключей, см. {@link CacheBatchOperations#multiEvict}.
+     */
+    public String toMessage(String cacheName, String key){
+        try {
+            return this.objectMapper.writeValueAsString(new CacheInvalidationMessage(NODE_ID, cacheName, key));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String getChannel(){
+        return this.cacheProperties.getInvalidationChannel();
+    }
+
+    public boolean isLocal(CacheInvalidationMessage message){
+        return NODE_ID.equals(message.origin());
+    }
+}
@@ -0,0 +1,64 @@
+package ru.stroy1click.user.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import ru.stroy1click.user.properties.CacheProperties;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Краткосрочная аренда ключа в Redis: при промахе кэша из БД грузит только узел, взявший аренду,
+ * остальные ждут, пока значение появится в Redis.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CacheLoadLease {
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of("""
+            if redis.call('get', KEYS[1]) == ARGV[1] then
+                return redis.call('del', KEYS[1])
+            end
+            return 0""", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final CacheProperties cacheProperties;
+
+    /**
+     * @return токен аренды или null, если ключ уже арендован другим узлом
+     */
+    public String tryAcquire(String leaseKey){
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = this.stringRedisTemplate.opsForValue()
+                    .setIfAbsent(leaseKey, token, this.cacheProperties.getLease().getTtl());
+            return Boolean.TRUE.equals(acquired) ? token : null;
+        } catch (RuntimeException e) {
+            //без Redis аренда не нужна: грузим сами
+            log.warn("Failed to acquire cache lease {}", leaseKey, e);
+            return token;
+        }
+    }
+
+    public Duration getWait(){
+        return this.cacheProperties.getLease().getWait();
+    }
+
+    public Duration getPollInterval(){
+        return this.cacheProperties.getLease().getPollInterval();
+    }
+
+    public void release(String leaseKey, String token){
+        try {
+            this.stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(leaseKey), token);
+        } catch (RuntimeException e) {
+            log.warn("Failed to release cache lease {}", leaseKey, e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package ru.stroy1click.user.cache;
+
+/**
+ * Служебные значения кэша.
+ */
+public enum CacheMarker {
+    //ключа нет в БД: хранится коротко (cache.negative-ttl), чтобы перебор несуществующих id и email не доходил до БД
+    NOT_FOUND
+}
@@ -0,0 +1,96 @@
+package ru.stroy1click.user.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.stereotype.Component;
+import ru.stroy1click.user.properties.CacheProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Граница версии ключа в Redis ({@code <ключ>:floor}). Инвалидация после коммита поднимает границу
+ * до записанной версии и удаляет значение, запись значения в кэш проходит, только если его версия
+ * не меньше границы. Так значение, прочитанное из БД до коммита и записанное после инвалидации,
+ * в кэш не попадёт, и TTL можно держать большим.
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheVersionGuard {
+
+    //маркеры и значения без версии (индекс email -> id) старше любой границы
+    public static final long UNVERSIONED = -1;
+
+    //для удалённых ключей и ключей без версии: пока граница жива, в кэш не попадает ничего
+    public static final long ANY = Long.MAX_VALUE;
+
+    private static final byte[] PUT_SCRIPT = """
+            local floor = redis.call('get', KEYS[2])
+            if floor and tonumber(floor) > tonumber(ARGV[1]) then
+                return 0
+            end
+            redis.call('set', KEYS[1], ARGV[2], 'px', ARGV[3])
+            return 1""".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] INVALIDATE_SCRIPT = """
+            local floor = redis.call('get', KEYS[2])
+            if floor and tonumber(floor) >= tonumber(ARGV[1]) then
+                redis.call('pexpire', KEYS[2], ARGV[2])
+            else
+                redis.call('set', KEYS[2], ARGV[1], 'px', ARGV[2])
+            end
+            return redis.call('del', KEYS[1])""".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] FLOOR_SUFFIX = ":floor".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisConnectionFactory redisConnectionFactory;
+
+    private final CacheProperties cacheProperties;
+
+    public static long versionOf(Object value){
+        return value instanceof Versioned versioned && versioned.getVersion() != null
+                ? versioned.getVersion()
+                : UNVERSIONED;
+    }
+
+    /**
+     * @return false, если значение старше границы и не записано
+     */
+    public boolean put(byte[] key, byte[] value, Duration ttl, long version){
+        try(RedisConnection connection = this.redisConnectionFactory.getConnection()){
+            return Long.valueOf(1).equals(put(connection, key, value, ttl, version));
+        }
+    }
+
+    /**
+     * В pipeline возвращает null, результат (1 - записано, 0 - нет) придёт из closePipeline.
+     */
+    public Long put(RedisConnection connection, byte[] key, byte[] value, Duration ttl, long version){
+        return connection.scriptingCommands().eval(PUT_SCRIPT, ReturnType.INTEGER, 2,
+                key, floorKey(key), toBytes(version), value, toBytes(Math.max(ttl.toMillis(), 1)));
+    }
+
+    /**
+     * Поднимает границу до {@code minVersion} (не опуская её) и удаляет значение.
+     */
+    public void invalidate(byte[] key, long minVersion){
+        try(RedisConnection connection = this.redisConnectionFactory.getConnection()){
+            connection.scriptingCommands().eval(INVALIDATE_SCRIPT, ReturnType.INTEGER, 2,
+                    key, floorKey(key), toBytes(minVersion),
+                    toBytes(this.cacheProperties.getVersioning().getFloorTtl().toMillis()));
+        }
+    }
+
+    private static byte[] floorKey(byte[] key){
+        byte[] floorKey = Arrays.copyOf(key, key.length + FLOOR_SUFFIX.length);
+        System.arraycopy(FLOOR_SUFFIX, 0, floorKey, key.length, FLOOR_SUFFIX.length);
+        return floorKey;
+    }
+
+    private static byte[] toBytes(long value){
+        return Long.toString(value).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,304 @@
+package ru.stroy1click.user.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.model.Role;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Компактный бинарный формат значений кэша со схемой для известных типов.
+ * <pre>
+ * [версия формата][флаги][тег типа][тело]
+ * </pre>
+ * Тело сжимается deflate, если длиннее порога. Значения неизвестных типов пишутся через {@code fallback} (json).
+ * Записи со старой или будущей версией формата читаются как промах, записи в json
+ * (до перехода на этот формат) читаются через {@code fallback}.
+ */
+@Slf4j
+public class CompactCacheSerializer implements RedisSerializer<Object> {
+
+    //не пересекается с первым байтом json ('{', '[', '"', цифры); 2 - в UserDto добавлена версия строки
+    static final byte VERSION = 2;
+
+    private static final int FLAG_COMPRESSED = 1;
+
+    private static final byte TYPE_FALLBACK = 0;
+
+    private static final byte TYPE_USER = 1;
+
+    private static final byte TYPE_LONG = 2;
+
+    private static final byte TYPE_USER_SUMMARY = 3;
+
+    private static final byte TYPE_USER_SUMMARY_LIST = 4;
+
+    //[expiresAt][loadMicros][тег типа значения][значение]
+    private static final byte TYPE_ENTRY = 5;
+
+    private static final byte TYPE_NOT_FOUND = 6;
+
+    private final RedisSerializer<Object> fallback;
+
+    private final int compressionThreshold;
+
+    public CompactCacheSerializer(RedisSerializer<Object> fallback, int compressionThreshold) {
+        this.fallback = fallback;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if(value == null) return null;
+
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(body);
+            byte type = writeBody(value, out);
+            out.flush();
+
+            int flags = 0;
+            byte[] payload = body.toByteArray();
+            if(this.compressionThreshold > 0 && payload.length > this.compressionThreshold){
+                payload = deflate(payload);
+                flags |= FLAG_COMPRESSED;
+            }
+
+            byte[] result = new byte[payload.length + 3];
+            result[0] = VERSION;
+            result[1] = (byte) flags;
+            result[2] = type;
+            System.arraycopy(payload, 0, result, 3, payload.length);
+            return result;
+        } catch (IOException e) {
+            throw new SerializationException("Failed to serialize cache value", e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if(bytes == null || bytes.length == 0) return null;
+        if(bytes[0] != VERSION){
+            if(isJson(bytes[0])) return this.fallback.deserialize(bytes);
+            //запись другой версии сервиса во время выкладки: считаем промахом
+            log.debug("Skipping cache value of unknown format version {}", bytes[0]);
+            return null;
+        }
+
+        try {
+            InputStream body = (bytes[1] & FLAG_COMPRESSED) != 0
+                    ? new ByteArrayInputStream(inflate(bytes))
+                    : new ByteArrayInputStream(bytes, 3, bytes.length - 3);
+            return readBody(bytes[2], new DataInputStream(body));
+        } catch (IOException e) {
+            throw new SerializationException("Failed to deserialize cache value", e);
+        }
+    }
+
+    private byte writeBody(Object value, DataOutputStream out) throws IOException {
+        if(value instanceof CacheEntry entry){
+            writeVarLong(entry.expiresAt(), out);
+            writeVarLong(entry.loadMicros(), out);
+            ByteArrayOutputStream body = new ByteArrayOutputStream(128);
+            DataOutputStream valueOut = new DataOutputStream(body);
+            out.writeByte(writeBody(entry.value(), valueOut));
+            valueOut.flush();
+            body.writeTo(out);
+            return TYPE_ENTRY;
+        }
+        if(value == CacheMarker.NOT_FOUND){
+            return TYPE_NOT_FOUND;
+        }
+        if(value instanceof UserDto userDto){
+            writeUser(userDto, out);
+            return TYPE_USER;
+        }
+        if(value instanceof Long number){
+            writeVarLong(number, out);
+            return TYPE_LONG;
+        }
+        if(value instanceof UserSummaryDto summary){
+            writeSummary(summary, out);
+            return TYPE_USER_SUMMARY;
+        }
+        if(value instanceof List<?> list && list.stream().allMatch(UserSummaryDto.class::isInstance)){
+            writeVarInt(list.size(), out);
+            for(Object item : list){
+                writeSummary((UserSummaryDto) item, out);
+            }
+            return TYPE_USER_SUMMARY_LIST;
+        }
+
+        out.write(this.fallback.serialize(value));
+        return TYPE_FALLBACK;
+    }
+
+    private Object readBody(byte type, DataInputStream in) throws IOException {
+        return switch (type) {
+            case TYPE_USER -> readUser(in);
+            case TYPE_LONG -> readVarLong(in);
+            case TYPE_USER_SUMMARY -> readSummary(in);
+            case TYPE_USER_SUMMARY_LIST -> {
+                int size = readVarInt(in);
+                List<UserSummaryDto> list = new ArrayList<>(size);
+                for(int i = 0; i < size; i++){
+                    list.add(readSummary(in));
+                }
+                yield list;
+            }
+            case TYPE_ENTRY -> {
+                long expiresAt = readVarLong(in);
+                long loadMicros = readVarLong(in);
+                yield new CacheEntry(readBody(in.readByte(), in), expiresAt, loadMicros);
+            }
+            case TYPE_NOT_FOUND -> CacheMarker.NOT_FOUND;
+            case TYPE_FALLBACK -> this.fallback.deserialize(in.readAllBytes());
+            default -> throw new SerializationException("Unknown cache value type " + type);
+        };
+    }
+
+    //поля UserDto в порядке объявления: id, firstName, lastName, email, password, emailConfirmed, role, version
+    private void writeUser(UserDto userDto, DataOutputStream out) throws IOException {
+        writeLong(userDto.getId(), out);
+        writeString(userDto.getFirstName(), out);
+        writeString(userDto.getLastName(), out);
+        writeString(userDto.getEmail(), out);
+        writeString(userDto.getPassword(), out);
+        writeBoolean(userDto.getEmailConfirmed(), out);
+        writeString(userDto.getRole() == null ? null : userDto.getRole().name(), out);
+        writeLong(userDto.getVersion(), out);
+    }
+
+    private UserDto readUser(DataInputStream in) throws IOException {
+        return new UserDto(
+                readLong(in),
+                readString(in),
+                readString(in),
+                readString(in),
+                readString(in),
+                readBoolean(in),
+                readRole(in),
+                readLong(in)
+        );
+    }
+
+    private void writeSummary(UserSummaryDto summary, DataOutputStream out) throws IOException {
+        writeLong(summary.id(), out);
+        writeString(summary.firstName(), out);
+        writeString(summary.lastName(), out);
+        writeString(summary.email(), out);
+        writeBoolean(summary.emailConfirmed(), out);
+        writeString(summary.role() == null ? null : summary.role().name(), out);
+    }
+
+    private UserSummaryDto readSummary(DataInputStream in) throws IOException {
+        return new UserSummaryDto(
+                readLong(in),
+                readString(in),
+                readString(in),
+                readString(in),
+                readBoolean(in),
+                readRole(in)
+        );
+    }
+
+    //null кодируется нулевой длиной, строка - длиной + 1 и байтами UTF-8
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        if(value == null){
+            writeVarInt(0, out);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1, out);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if(length == 0) return null;
+        return new String(in.readNBytes(length - 1), StandardCharsets.UTF_8);
+    }
+
+    private static Role readRole(DataInputStream in) throws IOException {
+        String role = readString(in);
+        return role == null ? null : Role.valueOf(role);
+    }
+
+    //0 - null, иначе значение + 1 (id и версии неотрицательные)
+    private static void writeLong(Long value, DataOutputStream out) throws IOException {
+        writeVarLong(value == null ? 0 : value + 1, out);
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        long value = readVarLong(in);
+        return value == 0 ? null : value - 1;
+    }
+
+    private static void writeBoolean(Boolean value, DataOutputStream out) throws IOException {
+        out.writeByte(value == null ? 0 : value ? 2 : 1);
+    }
+
+    private static Boolean readBoolean(DataInputStream in) throws IOException {
+        byte value = in.readByte();
+        return value == 0 ? null : value == 2;
+    }
+
+    private static void writeVarInt(int value, DataOutputStream out) throws IOException {
+        writeVarLong(value, out);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        return Math.toIntExact(readVarLong(in));
+    }
+
+    private static void writeVarLong(long value, DataOutputStream out) throws IOException {
+        while ((value & ~0x7FL) != 0){
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0) return value;
+        }
+        throw new SerializationException("Malformed varint in cache value");
+    }
+
+    private static byte[] deflate(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+        //значения кэша пишутся на горячем пути: скорость важнее последних процентов размера
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try(DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)){
+            out.write(bytes);
+        } finally {
+            deflater.end();
+        }
+        return compressed.toByteArray();
+    }
+
+    //распаковываем целиком: побайтовое чтение через InflaterInputStream на порядок медленнее
+    private static byte[] inflate(byte[] bytes) throws IOException {
+        try(InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(bytes, 3, bytes.length - 3))){
+            return in.readAllBytes();
+        }
+    }
+
+    private static boolean isJson(byte first) {
+        return first == '{' || first == '[' || first == '"' || first == '-' || (first >= '0' && first <= '9')
+                || first == 't' || first == 'f' || first == 'n';
+    }
+}
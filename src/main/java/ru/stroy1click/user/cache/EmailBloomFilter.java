@@ -0,0 +1,134 @@
+package ru.stroy1click.user.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.stroy1click.user.properties.EmailFilterProperties;
+import ru.stroy1click.user.repository.UserRepository;
+import ru.stroy1click.user.util.BloomFilter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Фильтр Блума по account.users.email. Отрицательный ответ позволяет не ходить в базу
+ * при проверке занятости email, положительный требует проверки запросом.
+ * Добавленные email рассылаются остальным узлам через канал инвалидации кэша,
+ * иначе до перестройки они отвечали бы "точно нет" на уже занятый email.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmailBloomFilter {
+
+    //имя в CacheInvalidationMessage.cacheName для рассылки добавленных email
+    public static final String NAME = "email-filter";
+
+    private final UserRepository userRepository;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private final EmailFilterProperties emailFilterProperties;
+
+    private final CacheInvalidationPublisher cacheInvalidationPublisher;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    //null до первой загрузки: пока фильтр не построен, отвечаем "возможно есть"
+    private volatile BloomFilter filter;
+
+    private volatile BloomFilter pending;
+
+    public boolean mightContain(String email){
+        BloomFilter current = this.filter;
+        return current == null || current.mightContain(email);
+    }
+
+    public void put(String email){
+        putAll(List.of(email));
+    }
+
+    public void putAll(Collection<String> emails){
+        if(emails.isEmpty()) return;
+        putAndPublish(emails);
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            //повторно после коммита, чтобы не потерять email, если перестройка прочитала таблицу до коммита
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    putAndPublish(emails);
+                }
+            });
+        }
+    }
+
+    /**
+     * Email, добавленный на другом узле, см. {@link CacheInvalidationListener}.
+     */
+    public void putRemote(String email){
+        doPut(email);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init(){
+        rebuild();
+    }
+
+    @Scheduled(initialDelayString = "${email-filter.rebuild-interval}", fixedDelayString = "${email-filter.rebuild-interval}")
+    public void rebuild(){
+        if(!this.rebuilding.compareAndSet(false, true)) return;
+        try {
+            long start = System.currentTimeMillis();
+            BloomFilter next = new BloomFilter(
+                    this.emailFilterProperties.getExpectedInsertions(),
+                    this.emailFilterProperties.getFalsePositiveProbability()
+            );
+            this.pending = next;
+
+            TransactionTemplate transactionTemplate = new TransactionTemplate(this.transactionManager);
+            transactionTemplate.setReadOnly(true);
+            transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            AtomicLong count = new AtomicLong();
+            transactionTemplate.executeWithoutResult(status -> {
+                try(Stream<String> emails = this.userRepository.streamAllEmails()){
+                    emails.forEach(email -> {
+                        next.put(email);
+                        count.incrementAndGet();
+                    });
+                }
+            });
+
+            this.filter = next;
+            log.info("Email bloom filter rebuilt with {} emails in {} ms", count.get(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.error("Failed to rebuild email bloom filter", e);
+        } finally {
+            this.pending = null;
+            this.rebuilding.set(false);
+        }
+    }
+
+    private void putAndPublish(Collection<String> emails){
+        emails.forEach(this::doPut);
+        this.cacheInvalidationPublisher.publishAll(NAME, emails);
+    }
+
+    private void doPut(String email){
+        BloomFilter current = this.filter;
+        if(current != null) current.put(email);
+
+        BloomFilter next = this.pending;
+        if(next != null) next.put(email);
+    }
+}
@@ -0,0 +1,396 @@
+package ru.stroy1click.user.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.*;
+
+/**
+ * Кэш из двух уровней: ограниченный in-heap L1 на каждом узле перед общим кэшем в Redis (L2).
+ * Инвалидация L1 на остальных узлах рассылается через {@link CacheInvalidationPublisher}.
+ * Промахи {@link #get(Object, Callable)} по одному ключу объединяются: на узле грузит один поток,
+ * а при включённой {@link CacheLoadLease} — один узел кластера.
+ * Значения хранятся в {@link CacheEntry}: записи, близкие к истечению, обновляются в фоне
+ * одним вызовом, остальные в это время получают значение из кэша (см. {@link CacheExpiry}).
+ * При включённом {@link CacheVersionGuard} загруженное значение не перезаписывает более новую версию.
+ */
+@Slf4j
+public class TwoLevelCache implements Cache {
+
+    private final String name;
+
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> localCache;
+
+    private final RedisCache redisCache;
+
+    private final CacheInvalidationPublisher cacheInvalidationPublisher;
+
+    //null, если аренда выключена
+    private final CacheLoadLease cacheLoadLease;
+
+    private final CacheExpiry cacheExpiry;
+
+    //null, если версии не проверяются
+    private final CacheVersionGuard cacheVersionGuard;
+
+    private final Executor refreshExecutor;
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+
+    private final Counter hitCounter;
+
+    private final Counter refreshAheadCounter;
+
+    private final Counter missCounter;
+
+    private final Counter loadedCounter;
+
+    private final Counter refreshedCounter;
+
+    private final Counter coalescedCounter;
+
+    private final Counter remoteCounter;
+
+    private final Counter staleCounter;
+
+    private final Timer loadTimer;
+
+    public TwoLevelCache(String name,
+                         com.github.benmanes.caffeine.cache.Cache<String, Object> localCache,
+                         RedisCache redisCache,
+                         CacheInvalidationPublisher cacheInvalidationPublisher,
+                         CacheLoadLease cacheLoadLease,
+                         CacheExpiry cacheExpiry,
+                         CacheVersionGuard cacheVersionGuard,
+                         Executor refreshExecutor,
+                         MeterRegistry meterRegistry) {
+        this.name = name;
+        this.localCache = localCache;
+        this.redisCache = redisCache;
+        this.cacheInvalidationPublisher = cacheInvalidationPublisher;
+        this.cacheLoadLease = cacheLoadLease;
+        this.cacheExpiry = cacheExpiry;
+        this.cacheVersionGuard = cacheVersionGuard;
+        this.refreshExecutor = refreshExecutor;
+        this.hitCounter = lookupCounter(meterRegistry, "hit", "Hits of entries that are not due for refresh");
+        this.refreshAheadCounter = lookupCounter(meterRegistry, "refresh_ahead", "Hits that scheduled an early background refresh");
+        this.missCounter = lookupCounter(meterRegistry, "miss", "Misses the caller had to wait a load for");
+        this.loadedCounter = loadCounter(meterRegistry, "loaded", "Misses loaded by this node");
+        this.coalescedCounter = loadCounter(meterRegistry, "coalesced", "Misses that awaited a load already running on this node");
+        this.remoteCounter = loadCounter(meterRegistry, "remote", "Misses served by a load that another node ran under its lease");
+        this.refreshedCounter = loadCounter(meterRegistry, "refreshed", "Entries reloaded in the background before expiry");
+        this.staleCounter = loadCounter(meterRegistry, "stale", "Loaded values not cached because a newer version was committed meanwhile");
+        this.loadTimer = Timer.builder("cache.load.duration")
+                .description("Time spent loading a missing or refreshed entry from the database")
+                .tag("cache", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this.redisCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object stored = lookup(key);
+        return stored == null ? null : new SimpleValueWrapper(CacheEntry.unwrap(stored));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        if(wrapper == null) return null;
+
+        Object value = wrapper.get();
+        if(value != null && type != null && !type.isInstance(value)){
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object stored = lookup(key);
+        if(stored != null){
+            if(stored instanceof CacheEntry entry && this.cacheExpiry.shouldRefresh(entry)){
+                this.refreshAheadCounter.increment();
+                refresh(key, valueLoader);
+            } else {
+                this.hitCounter.increment();
+            }
+            return (T) CacheEntry.unwrap(stored);
+        }
+        this.missCounter.increment();
+
+        //RedisCache.get(key, loader) синхронизируется на весь кэш, поэтому объединяем загрузки по ключу сами
+        String localKey = toLocalKey(key);
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> running = this.loads.putIfAbsent(localKey, load);
+        if(running != null){
+            this.coalescedCounter.increment();
+            try {
+                Object value = running.join();
+                //фоновое обновление уступило другому узлу: грузим как при обычном промахе
+                return value != null ? (T) value : get(key, valueLoader);
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+
+        try {
+            T value = load(key, valueLoader);
+            load.complete(value);
+            return value;
+        } catch (Exception e) {
+            load.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            this.loads.remove(localKey, load);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        store(key, value, 0);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        Object entry = value == null ? null : this.cacheExpiry.entry(value, 0);
+        ValueWrapper existing = this.redisCache.putIfAbsent(key, entry);
+        Object current = existing != null ? existing.get() : entry;
+        if(current != null){
+            this.localCache.put(toLocalKey(key), current);
+        }
+        return existing == null ? null : new SimpleValueWrapper(CacheEntry.unwrap(existing.get()));
+    }
+
+    @Override
+    public void evict(Object key) {
+        this.redisCache.evict(key);
+        evictLocal(toLocalKey(key));
+        this.cacheInvalidationPublisher.publish(this.name, toLocalKey(key));
+    }
+
+    /**
+     * Удаляет ключ и не даёт записать обратно значения с версией меньше {@code minVersion},
+     * см. {@link CacheVersionGuard}. Без проверки версий - обычный {@link #evict(Object)}.
+     */
+    public void evict(Object key, long minVersion) {
+        if(this.cacheVersionGuard == null){
+            evict(key);
+            return;
+        }
+        this.cacheVersionGuard.invalidate(toRedisKey(key), minVersion);
+        evictLocal(toLocalKey(key));
+        this.cacheInvalidationPublisher.publish(this.name, toLocalKey(key));
+    }
+
+    @Override
+    public void clear() {
+        this.redisCache.clear();
+        clearLocal();
+        this.cacheInvalidationPublisher.publish(this.name, null);
+    }
+
+    public Object getLocal(Object key) {
+        Object stored = this.localCache.getIfPresent(toLocalKey(key));
+        if(stored instanceof CacheEntry entry && entry.isExpired()) return null;
+        return CacheEntry.unwrap(stored);
+    }
+
+    /**
+     * @param stored значение в том виде, в каком оно лежит в Redis
+     */
+    public void putLocal(Object key, Object stored) {
+        this.localCache.put(toLocalKey(key), stored);
+    }
+
+    public CacheEntry newEntry(Object value) {
+        return this.cacheExpiry.entry(value, 0);
+    }
+
+    public RedisCacheConfiguration getRedisCacheConfiguration() {
+        return this.redisCache.getCacheConfiguration();
+    }
+
+    public boolean isVersioned() {
+        return this.cacheVersionGuard != null;
+    }
+
+    public byte[] toRedisKey(Object key) {
+        RedisCacheConfiguration config = getRedisCacheConfiguration();
+        return toBytes(config.getKeySerializationPair().write(config.getKeyPrefixFor(this.name) + key));
+    }
+
+    public byte[] toRedisValue(CacheEntry entry) {
+        return toBytes(getRedisCacheConfiguration().getValueSerializationPair().write(entry));
+    }
+
+    public Duration getTtl(Object key, CacheEntry entry) {
+        return getRedisCacheConfiguration().getTtlFunction().getTimeToLive(key, entry);
+    }
+
+    public void evictLocal(String key) {
+        this.localCache.invalidate(key);
+    }
+
+    public void clearLocal() {
+        this.localCache.invalidateAll();
+    }
+
+    //значение из L1, а если его нет или оно пережило запись в Redis - из Redis
+    private Object lookup(Object key) {
+        String localKey = toLocalKey(key);
+        Object localValue = this.localCache.getIfPresent(localKey);
+        if(localValue != null){
+            if(!(localValue instanceof CacheEntry entry && entry.isExpired())) return localValue;
+            this.localCache.invalidate(localKey);
+        }
+
+        ValueWrapper redisValue = this.redisCache.get(key);
+        if(redisValue == null || redisValue.get() == null) return null;
+        this.localCache.put(localKey, redisValue.get());
+        return redisValue.get();
+    }
+
+    private void refresh(Object key, Callable<?> valueLoader) {
+        String localKey = toLocalKey(key);
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        //ключ уже грузится или обновляется
+        if(this.loads.putIfAbsent(localKey, load) != null) return;
+
+        try {
+            this.refreshExecutor.execute(() -> {
+                try {
+                    load.complete(refreshAndPut(key, valueLoader));
+                } catch (Exception e) {
+                    log.warn("Failed to refresh cache {} entry {}", this.name, key, e);
+                    load.completeExceptionally(e);
+                } finally {
+                    this.loads.remove(localKey, load);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.loads.remove(localKey, load);
+            load.completeExceptionally(e);
+        }
+    }
+
+    //null, если запись обновляет другой узел
+    private Object refreshAndPut(Object key, Callable<?> valueLoader) throws Exception {
+        if(this.cacheLoadLease == null) return loadAndPut(key, valueLoader, this.refreshedCounter);
+
+        String leaseKey = leaseKey(key);
+        String token = this.cacheLoadLease.tryAcquire(leaseKey);
+        if(token == null) return null;
+        try {
+            return loadAndPut(key, valueLoader, this.refreshedCounter);
+        } finally {
+            this.cacheLoadLease.release(leaseKey, token);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T load(Object key, Callable<T> valueLoader) throws Exception {
+        if(this.cacheLoadLease == null) return loadAndPut(key, valueLoader, this.loadedCounter);
+
+        String leaseKey = leaseKey(key);
+        String token = this.cacheLoadLease.tryAcquire(leaseKey);
+        if(token != null){
+            try {
+                return loadAndPut(key, valueLoader, this.loadedCounter);
+            } finally {
+                this.cacheLoadLease.release(leaseKey, token);
+            }
+        }
+
+        //ключ грузит другой узел: ждём его результат в Redis, по истечении ожидания грузим сами
+        long deadline = System.nanoTime() + this.cacheLoadLease.getWait().toNanos();
+        while (System.nanoTime() < deadline){
+            Thread.sleep(this.cacheLoadLease.getPollInterval().toMillis());
+            ValueWrapper redisValue = this.redisCache.get(key);
+            if(redisValue != null && redisValue.get() != null){
+                this.remoteCounter.increment();
+                this.localCache.put(toLocalKey(key), redisValue.get());
+                return (T) CacheEntry.unwrap(redisValue.get());
+            }
+        }
+        return loadAndPut(key, valueLoader, this.loadedCounter);
+    }
+
+    private <T> T loadAndPut(Object key, Callable<T> valueLoader, Counter counter) throws Exception {
+        long start = System.nanoTime();
+        T value = valueLoader.call();
+        long loadNanos = System.nanoTime() - start;
+        counter.increment();
+        this.loadTimer.record(loadNanos, TimeUnit.NANOSECONDS);
+        store(key, value, TimeUnit.NANOSECONDS.toMicros(loadNanos));
+        return value;
+    }
+
+    //время загрузки определяет, насколько заранее запись начнёт обновляться, 0 - не обновлять заранее
+    private void store(Object key, Object value, long loadMicros) {
+        if(value == null){
+            this.redisCache.put(key, null);
+            return;
+        }
+        CacheEntry entry = this.cacheExpiry.entry(value, loadMicros);
+        if(this.cacheVersionGuard == null){
+            this.redisCache.put(key, entry);
+        } else if(!this.cacheVersionGuard.put(toRedisKey(key), toRedisValue(entry), getTtl(key, entry),
+                CacheVersionGuard.versionOf(value))){
+            //значение прочитано до коммита более новой версии
+            this.staleCounter.increment();
+            return;
+        }
+        this.localCache.put(toLocalKey(key), entry);
+    }
+
+    private String leaseKey(Object key) {
+        return getRedisCacheConfiguration().getKeyPrefixFor(this.name) + key + ":lease";
+    }
+
+    private Counter lookupCounter(MeterRegistry meterRegistry, String result, String description) {
+        return Counter.builder("cache.lookups")
+                .description(description)
+                .tag("cache", this.name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private Counter loadCounter(MeterRegistry meterRegistry, String result, String description) {
+        return Counter.builder("cache.loads")
+                .description(description)
+                .tag("cache", this.name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private String toLocalKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,80 @@
+package ru.stroy1click.user.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import ru.stroy1click.user.properties.CacheProperties;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final RedisCacheManager redisCacheManager;
+
+    private final CacheInvalidationPublisher cacheInvalidationPublisher;
+
+    private final CacheProperties cacheProperties;
+
+    private final CacheLoadLease cacheLoadLease;
+
+    private final CacheVersionGuard cacheVersionGuard;
+
+    private final Executor refreshExecutor;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(RedisCacheManager redisCacheManager,
+                                CacheInvalidationPublisher cacheInvalidationPublisher,
+                                CacheProperties cacheProperties,
+                                CacheLoadLease cacheLoadLease,
+                                CacheVersionGuard cacheVersionGuard,
+                                Executor refreshExecutor,
+                                MeterRegistry meterRegistry) {
+        this.redisCacheManager = redisCacheManager;
+        this.cacheInvalidationPublisher = cacheInvalidationPublisher;
+        this.cacheProperties = cacheProperties;
+        this.cacheLoadLease = cacheLoadLease;
+        this.cacheVersionGuard = cacheVersionGuard;
+        this.refreshExecutor = refreshExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return this.caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(this.caches.keySet());
+    }
+
+    private TwoLevelCache createCache(String name) {
+        RedisCache redisCache = (RedisCache) this.redisCacheManager.getCache(name);
+        com.github.benmanes.caffeine.cache.Cache<String, Object> localCache = Caffeine.newBuilder()
+                .maximumSize(this.cacheProperties.getLocal().getMaximumSize())
+                .expireAfterWrite(this.cacheProperties.getLocal().getTtl())
+                .recordStats()
+                .build();
+        //попадания, промахи и вытеснения L1; попадания двух уровней вместе - cache.lookups
+        CaffeineCacheMetrics.monitor(this.meterRegistry, localCache, name, "level", "local");
+
+        CacheProperties.Spec spec = this.cacheProperties.getSpec(name);
+        CacheExpiry cacheExpiry = new CacheExpiry(spec.getTtl(), spec.getNegativeTtl(), spec.getJitter(), spec.getRefreshAhead());
+
+        return new TwoLevelCache(name, localCache, redisCache, this.cacheInvalidationPublisher,
+                this.cacheProperties.getLease().isEnabled() ? this.cacheLoadLease : null,
+                cacheExpiry, this.cacheProperties.getVersioning().isEnabled() ? this.cacheVersionGuard : null,
+                this.refreshExecutor, this.meterRegistry);
+    }
+}
@@ -0,0 +1,122 @@
+package ru.stroy1click.user.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.exception.NotFoundException;
+
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Пользователь хранится одной записью в кэше user по id, кэш email - только индекс email -> id.
+ * Поэтому изменение пользователя инвалидирует одну запись, а чтение по email делает два быстрых шага.
+ * Отсутствие пользователя тоже кэшируется ({@link CacheMarker#NOT_FOUND}) на cache.negative-ttl.
+ */
+@Component
+public class UserCache {
+
+    public static final String USER = "user";
+
+    //новое имя, а не "email": в старом кэше лежат целые UserDto, они истекут по TTL
+    public static final String EMAIL = "email-id";
+
+    private final CacheManager cacheManager;
+
+    private final Counter negativeStoredCounter;
+
+    private final Counter negativeHitCounter;
+
+    public UserCache(CacheManager cacheManager, MeterRegistry meterRegistry) {
+        this.cacheManager = cacheManager;
+        this.negativeStoredCounter = Counter.builder("cache.negative")
+                .description("Lookups of absent users that stored a negative entry")
+                .tag("result", "stored")
+                .register(meterRegistry);
+        this.negativeHitCounter = Counter.builder("cache.negative")
+                .description("Lookups of absent users answered by a negative entry without the database")
+                .tag("result", "hit")
+                .register(meterRegistry);
+    }
+
+    public UserDto getById(Long id, Function<Long, Optional<UserDto>> loadById, Supplier<NotFoundException> notFound){
+        Object value = get(getCache(USER), id, () -> orNotFound(loadById.apply(id)));
+        if(value instanceof UserDto userDto) return userDto;
+        throw notFound.get();
+    }
+
+    /**
+     * @param loadByEmail загрузка при промахе индекса, найденный пользователь кладётся и в кэш user
+     * @param loadById    загрузка при промахе кэша user
+     */
+    public UserDto getByEmail(String email, Callable<Optional<UserDto>> loadByEmail,
+                              Function<Long, Optional<UserDto>> loadById, Supplier<NotFoundException> notFound){
+        Cache users = getCache(USER);
+        Cache emails = getCache(EMAIL);
+
+        Object id = get(emails, email, () -> {
+            Optional<UserDto> userDto = loadByEmail.call();
+            if(userDto.isEmpty()) return orNotFound(userDto);
+
+            users.put(userDto.get().getId(), userDto.get());
+            return userDto.get().getId();
+        });
+        if(id == CacheMarker.NOT_FOUND) throw notFound.get();
+
+        Long userId = toId(id);
+        Object value = get(users, userId, () -> orNotFound(loadById.apply(userId)));
+        if(value instanceof UserDto userDto) return userDto;
+
+        //индекс ссылается на удалённого пользователя
+        emails.evict(email);
+        throw notFound.get();
+    }
+
+    //json-сериализатор возвращает небольшие id как Integer
+    public static Long toId(Object cachedId){
+        return cachedId == null ? null : ((Number) cachedId).longValue();
+    }
+
+    private Object orNotFound(Optional<UserDto> userDto){
+        if(userDto.isPresent()) return userDto.get();
+
+        this.negativeStoredCounter.increment();
+        return CacheMarker.NOT_FOUND;
+    }
+
+    private Object get(Cache cache, Object key, Callable<Object> load){
+        AtomicBoolean loaded = new AtomicBoolean();
+        Object value = unwrap(() -> cache.get(key, () -> {
+            loaded.set(true);
+            return load.call();
+        }));
+        //сохранение считает сама загрузка, здесь - только ответы из кэша
+        if(value == CacheMarker.NOT_FOUND && !loaded.get()) this.negativeHitCounter.increment();
+        return value;
+    }
+
+    private Cache getCache(String name){
+        Cache cache = this.cacheManager.getCache(name);
+        if(cache == null) throw new IllegalStateException("Cache %s is not configured".formatted(name));
+        return cache;
+    }
+
+    private static <T> T unwrap(Callable<T> call){
+        try {
+            return call.call();
+        } catch (Cache.ValueRetrievalException e) {
+            if(e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
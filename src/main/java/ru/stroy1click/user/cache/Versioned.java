@@ -0,0 +1,10 @@
+package ru.stroy1click.user.cache;
+
+/**
+ * Значение кэша с версией строки в БД, см. {@link CacheVersionGuard}.
+ */
+public interface Versioned {
+
+    //null - версия неизвестна, значение считается старше любой границы
+    Long getVersion();
+}
@@ -1,30 +1,87 @@
 package ru.stroy1click.user.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
 import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import ru.stroy1click.user.cache.CacheEntry;
+import ru.stroy1click.user.cache.CacheFormat;
+import ru.stroy1click.user.cache.CacheInvalidationListener;
+import ru.stroy1click.user.cache.CacheInvalidationPublisher;
+import ru.stroy1click.user.cache.CacheLoadLease;
+import ru.stroy1click.user.cache.CacheMarker;
+import ru.stroy1click.user.cache.CacheVersionGuard;
+import ru.stroy1click.user.cache.CompactCacheSerializer;
+import ru.stroy1click.user.cache.TwoLevelCacheManager;
+import ru.stroy1click.user.properties.CacheProperties;
 
-import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 @Configuration
 public class CacheConfig {
 
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory connectionFactory) {
-        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
-                .entryTtl(Duration.ofSeconds(40))
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory,
+                                     RedisSerializer<Object> cacheValueSerializer,
+                                     CacheInvalidationPublisher cacheInvalidationPublisher,
+                                     CacheProperties cacheProperties,
+                                     CacheLoadLease cacheLoadLease,
+                                     CacheVersionGuard cacheVersionGuard,
+                                     @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+                                     Executor cacheRefreshExecutor,
+                                     MeterRegistry meterRegistry) {
+        RedisSerializer<Object> compactSerializer = new CompactCacheSerializer(
+                cacheValueSerializer, cacheProperties.getCompressionThreshold()
+        );
+        Function<CacheProperties.Spec, RedisCacheConfiguration> configFor = spec -> RedisCacheConfiguration.defaultCacheConfig()
+                //TTL со случайным разбросом выбирает TwoLevelCache и хранит в CacheEntry
+                .entryTtl((key, value) -> value instanceof CacheEntry entry ? entry.remainingTtl()
+                        : value == CacheMarker.NOT_FOUND ? spec.getNegativeTtl() : spec.getTtl())
                 .disableCachingNullValues()
-                .serializeValuesWith(
-                        RedisSerializationContext.SerializationPair.fromSerializer(new GenericJackson2JsonRedisSerializer()) //чтобы было комфортно смотерть в redis-cli(в json)
-                );
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(
+                        spec.getFormat() == CacheFormat.JSON ? cacheValueSerializer : compactSerializer
+                ));
 
-        return RedisCacheManager.builder(connectionFactory)
-                .cacheDefaults(config)
+        Map<String, RedisCacheConfiguration> cacheConfigurations = new HashMap<>();
+        cacheProperties.getCaches().keySet().forEach(name -> cacheConfigurations.put(
+                name, configFor.apply(cacheProperties.getSpec(name))
+        ));
+
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(configFor.apply(cacheProperties.getSpec(null)))
+                .withInitialCacheConfigurations(cacheConfigurations)
                 .build();
+        redisCacheManager.initializeCaches();
+
+        return new TwoLevelCacheManager(redisCacheManager, cacheInvalidationPublisher, cacheProperties,
+                cacheLoadLease, cacheVersionGuard, cacheRefreshExecutor, meterRegistry);
+    }
+
+    @Bean
+    public RedisSerializer<Object> cacheValueSerializer() {
+        return new GenericJackson2JsonRedisSerializer(); //чтобы было комфортно смотерть в redis-cli(в json)
+    }
+
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                            CacheInvalidationListener cacheInvalidationListener,
+                                                                            CacheProperties cacheProperties) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheInvalidationListener, new ChannelTopic(cacheProperties.getInvalidationChannel()));
+        return container;
     }
 }
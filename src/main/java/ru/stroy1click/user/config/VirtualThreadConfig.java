@@ -0,0 +1,52 @@
+package ru.stroy1click.user.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.stroy1click.user.datasource.ConnectionBulkheadDataSource;
+import ru.stroy1click.user.datasource.VirtualThreadPinningMonitor;
+import ru.stroy1click.user.properties.VirtualThreadProperties;
+
+import javax.sql.DataSource;
+
+/**
+ * Дополнения к spring.threads.virtual.enabled=true: сам переход Tomcat, @Async и @Scheduled
+ * на виртуальные потоки делает Spring Boot.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(MeterRegistry meterRegistry,
+                                                                   VirtualThreadProperties virtualThreadProperties) {
+        return new VirtualThreadPinningMonitor(meterRegistry, virtualThreadProperties);
+    }
+
+    @Bean
+    public static BeanPostProcessor connectionBulkheadPostProcessor(ObjectProvider<VirtualThreadProperties> virtualThreadProperties,
+                                                                    ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if(!(bean instanceof HikariDataSource hikariDataSource)) return bean;
+
+                ConnectionBulkheadDataSource dataSource = new ConnectionBulkheadDataSource(
+                        hikariDataSource,
+                        hikariDataSource.getMaximumPoolSize(),
+                        virtualThreadProperties.getObject().getConnectionWait()
+                );
+                Gauge.builder("db.bulkhead.available", dataSource, ConnectionBulkheadDataSource::getAvailablePermits)
+                        .register(meterRegistry.getObject());
+                Gauge.builder("db.bulkhead.waiting", dataSource, ConnectionBulkheadDataSource::getQueueLength)
+                        .register(meterRegistry.getObject());
+                return dataSource;
+            }
+        };
+    }
+}
@@ -1,20 +1,29 @@
 package ru.stroy1click.user.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.context.MessageSource;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import ru.stroy1click.user.exception.*;
-import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.time.Duration;
 import java.util.Locale;
 
 @RestControllerAdvice
 @RequiredArgsConstructor
 public class AdviceController {
 
+    //имя задано в V7__users_email_constraint_name.sql
+    private static final String EMAIL_UNIQUE_CONSTRAINT = "users_email_unique";
+
     private final MessageSource messageSource;
 
     @ExceptionHandler(NotFoundException.class)
@@ -63,6 +72,51 @@ public class AdviceController {
         return problemDetail;
     }
 
+    //email занят параллельно на другом узле после проверки в UserCreateValidator
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ProblemDetail handleException(DataIntegrityViolationException exception){
+        if(isEmailUniqueViolation(exception)){
+            return problemDetail(new AlreadyExistsException(
+                    this.messageSource.getMessage(
+                            "error.details.already_exist_email",
+                            null,
+                            Locale.getDefault()
+                    )
+            ));
+        }
+        ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(
+                HttpStatus.CONFLICT,
+                this.messageSource.getMessage(
+                        "error.details.conflict",
+                        null,
+                        Locale.getDefault()
+                )
+        );
+        problemDetail.setTitle(
+                this.messageSource.getMessage(
+                        "error.title.conflict",
+                        null,
+                        Locale.getDefault()
+                )
+        );
+        return problemDetail;
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ProblemDetail handleException(PreconditionFailedException exception){
+        ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(
+                HttpStatus.PRECONDITION_FAILED, exception.getMessage()
+        );
+        problemDetail.setTitle(
+                this.messageSource.getMessage(
+                        "error.title.precondition_failed",
+                        null,
+                        Locale.getDefault()
+                )
+        );
+        return problemDetail;
+    }
+
     @ExceptionHandler(AuthorizationException.class)
     public ProblemDetail handleException(AuthorizationException exception){
         ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(
@@ -78,8 +132,8 @@ public class AdviceController {
         return problemDetail;
     }
 
-    @ExceptionHandler(RequestNotPermitted.class)
-    public ProblemDetail handleException(RequestNotPermitted exception){
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<ProblemDetail> handleException(RateLimitExceededException exception){
         ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(
                 HttpStatus.TOO_MANY_REQUESTS, exception.getMessage()
         );
@@ -88,13 +142,62 @@ public class AdviceController {
                 null,
                 Locale.getDefault()
         ));
-        problemDetail.setDetail(
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(exception.getRetryAfter()))
+                .body(problemDetail);
+    }
+
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<ProblemDetail> handleException(ServiceOverloadedException exception){
+        ProblemDetail problemDetail = ProblemDetail.forStatusAndDetail(
+                HttpStatus.SERVICE_UNAVAILABLE, exception.getMessage()
+        );
+        problemDetail.setTitle(
                 this.messageSource.getMessage(
-                        "error.details.too_many_requests",
+                        "error.title.service_unavailable",
                         null,
                         Locale.getDefault()
                 )
         );
-        return problemDetail;
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(exception.getRetryAfter()))
+                .body(problemDetail);
+    }
+
+    @ExceptionHandler(CannotCreateTransactionException.class)
+    public ResponseEntity<ProblemDetail> handleException(CannotCreateTransactionException exception){
+        return databaseUnavailable();
+    }
+
+    //то же вне транзакции: Hibernate берёт соединение при первом запросе, и переполненный bulkhead
+    //приходит как DataAccessResourceFailureException, а не CannotCreateTransactionException
+    @ExceptionHandler(DataAccessResourceFailureException.class)
+    public ResponseEntity<ProblemDetail> handleException(DataAccessResourceFailureException exception){
+        return databaseUnavailable();
+    }
+
+    private ResponseEntity<ProblemDetail> databaseUnavailable(){
+        return handleException(new ServiceOverloadedException(
+                this.messageSource.getMessage(
+                        "error.details.database_unavailable",
+                        null,
+                        Locale.getDefault()
+                ),
+                Duration.ofSeconds(1)
+        ));
+    }
+
+    //округляем вверх: повтор раньше срока снова получит 429 или 503
+    private static String retryAfterSeconds(Duration retryAfter){
+        return String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+    }
+
+    private static boolean isEmailUniqueViolation(DataIntegrityViolationException exception){
+        for(Throwable cause = exception; cause != null; cause = cause.getCause()){
+            if(cause instanceof ConstraintViolationException violation){
+                return EMAIL_UNIQUE_CONSTRAINT.equalsIgnoreCase(violation.getConstraintName());
+            }
+        }
+        return false;
     }
 }
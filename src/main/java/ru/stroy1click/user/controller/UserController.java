@@ -1,54 +1,185 @@
 package ru.stroy1click.user.controller;
 
-import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.MessageSource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.dto.UserEventPage;
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.dto.UserSummaryPage;
 import ru.stroy1click.user.exception.ValidationException;
 import ru.stroy1click.user.model.ConfirmEmailRequest;
+import ru.stroy1click.user.model.UserDataFormat;
+import ru.stroy1click.user.model.UserEventRequest;
+import ru.stroy1click.user.model.UserListRequest;
+import ru.stroy1click.user.model.UserSearchRequest;
+import ru.stroy1click.user.model.UserBatchRequest;
 import ru.stroy1click.user.model.UserServiceUpdatePasswordRequest;
+import ru.stroy1click.user.ratelimit.RateLimited;
+import ru.stroy1click.user.service.UserEventService;
+import ru.stroy1click.user.service.UserExportService;
+import ru.stroy1click.user.service.UserImportService;
 import ru.stroy1click.user.service.UserService;
+import ru.stroy1click.user.util.AcceptEncodingUtils;
+import ru.stroy1click.user.util.ETagUtils;
 import ru.stroy1click.user.util.ValidationErrorUtils;
 import ru.stroy1click.user.validator.UserCreateValidator;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/v1/users")
 @RequiredArgsConstructor
 @Tag(name = "User Controller", description = "Interaction with user")
-@RateLimiter(name = "userLimiter")
 public class UserController {
 
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private static final String CSV_VALUE = "text/csv";
+
     private final UserService userService;
 
+    private final UserImportService userImportService;
+
+    private final UserExportService userExportService;
+
+    private final UserEventService userEventService;
+
     private final UserCreateValidator userCreateValidator;
 
     private final MessageSource messageSource;
 
+    @GetMapping
+    @Operation(summary = "Список пользователей с keyset-пагинацией и фильтрами по роли и подтверждению email.")
+    public UserSummaryPage getPage(@Valid UserListRequest userListRequest, BindingResult bindingResult){
+        if(bindingResult.hasFieldErrors()) throw new ValidationException(ValidationErrorUtils.collectErrorsToString(
+                bindingResult.getFieldErrors()
+        ));
+
+        return this.userService.getPage(
+                Objects.requireNonNullElse(userListRequest.getAfterId(), 0L),
+                userListRequest.getRole(),
+                userListRequest.getEmailConfirmed(),
+                Objects.requireNonNullElse(userListRequest.getLimit(), 50)
+        );
+    }
+
+    @GetMapping("/search")
+    @Operation(summary = "Поиск пользователей по части имени, фамилии или электронной почты.")
+    public List<UserSummaryDto> search(@Valid UserSearchRequest userSearchRequest, BindingResult bindingResult){
+        if(bindingResult.hasFieldErrors()) throw new ValidationException(ValidationErrorUtils.collectErrorsToString(
+                bindingResult.getFieldErrors()
+        ));
+
+        return this.userService.search(
+                userSearchRequest.getQuery(),
+                Objects.requireNonNullElse(userSearchRequest.getLimit(), 20)
+        );
+    }
+
+    @GetMapping("/events")
+    @Operation(summary = "События изменения пользователей после указанной позиции потока.")
+    public UserEventPage getEvents(@Valid UserEventRequest userEventRequest, BindingResult bindingResult){
+        if(bindingResult.hasFieldErrors()) throw new ValidationException(ValidationErrorUtils.collectErrorsToString(
+                bindingResult.getFieldErrors()
+        ));
+
+        return this.userEventService.getEvents(
+                Objects.requireNonNullElse(userEventRequest.getAfter(), 0L),
+                Objects.requireNonNullElse(userEventRequest.getLimit(), 100)
+        );
+    }
+
+    //при совпадении If-None-Match с ETag Spring отвечает 304 без тела, UserDto не сериализуется
     @GetMapping("/{id}")
     @Operation(summary = "Получение пользователя.")
-    public UserDto get(@PathVariable("id") Long id){
-        return this.userService.get(id);
+    public ResponseEntity<UserDto> get(@PathVariable("id") Long id){
+        return withETag(this.userService.get(id));
     }
 
     @GetMapping("/email")
     @Operation(summary = "Получение пользователя по электронной почте.")
-    public UserDto getByEmail(@RequestParam("email") String email){
-        return this.userService.getByEmail(email);
+    public ResponseEntity<UserDto> getByEmail(@RequestParam("email") String email){
+        return withETag(this.userService.getByEmail(email));
+    }
+
+    @RequestMapping(value = "/exists", method = RequestMethod.HEAD)
+    @Operation(summary = "Проверка существования пользователя по электронной почте.")
+    public ResponseEntity<Void> existsByEmail(@RequestParam("email") String email){
+        return this.userService.existsUserByEmail(email)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    @PostMapping("/batch")
+    @Operation(summary = "Получение пользователей по списку id и/или электронных почт.")
+    public List<UserDto> getAll(@RequestBody @Valid UserBatchRequest userBatchRequest, BindingResult bindingResult){
+        if(bindingResult.hasFieldErrors()) throw new ValidationException(ValidationErrorUtils.collectErrorsToString(
+                bindingResult.getFieldErrors()
+        ));
+
+        return this.userService.getAll(
+                Objects.requireNonNullElse(userBatchRequest.getIds(), List.of()),
+                Objects.requireNonNullElse(userBatchRequest.getEmails(), List.of())
+        );
+    }
+
+    @GetMapping(value = "/export", produces = {NDJSON_VALUE, CSV_VALUE})
+    @Operation(summary = "Потоковая выгрузка всех пользователей без паролей в NDJSON или CSV.")
+    public void exportUsers(@RequestParam(value = "format", defaultValue = "NDJSON") UserDataFormat format,
+                            @RequestParam(value = "afterId", required = false) Long afterId,
+                            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                            HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(format == UserDataFormat.CSV ? CSV_VALUE : NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        if(AcceptEncodingUtils.accepts(acceptEncoding, "gzip")){
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            try(GZIPOutputStream output = new GZIPOutputStream(response.getOutputStream(), 64 * 1024)){
+                this.userExportService.export(afterId, format, output);
+            }
+        } else {
+            this.userExportService.export(afterId, format, response.getOutputStream());
+        }
+    }
+
+    @PostMapping(value = "/import",
+            consumes = {NDJSON_VALUE, CSV_VALUE},
+            produces = NDJSON_VALUE)
+    @Operation(summary = "Потоковый импорт пользователей из NDJSON или CSV.")
+    @RateLimited(cost = 50)
+    public void importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        UserDataFormat format = contentType.isCompatibleWith(MediaType.APPLICATION_NDJSON)
+                ? UserDataFormat.NDJSON
+                : UserDataFormat.CSV;
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        this.userImportService.importUsers(request.getInputStream(), format, response.getOutputStream());
     }
 
     @PostMapping
     @Operation(summary = "Создание пользователя.")
+    @RateLimited(cost = 10) //bcrypt
     public ResponseEntity<UserDto> create(@RequestBody @Valid UserDto userDto, BindingResult bindingResult){
         if(bindingResult.hasFieldErrors()) throw new ValidationException(ValidationErrorUtils.collectErrorsToString(
                 bindingResult.getFieldErrors()
@@ -65,13 +196,14 @@ public class UserController {
 
     @PatchMapping("/{id}")
     @Operation(summary = "Обновление пользователя.")
-    public ResponseEntity<String> update(@PathVariable("id") Long id, @RequestBody @Valid UserDto userDto, BindingResult bindingResult){
+    public ResponseEntity<String> update(@PathVariable("id") Long id, @RequestBody @Valid UserDto userDto, BindingResult bindingResult,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
         if(bindingResult.hasFieldErrors()) throw new ValidationException(ValidationErrorUtils.collectErrorsToString(
                 bindingResult.getFieldErrors()
         ));
 
-        this.userService.update(id, userDto);
-        return ResponseEntity.status(HttpStatus.OK).body(
+        Long version = this.userService.update(id, userDto, ETagUtils.versions(id, ifMatch));
+        return ResponseEntity.status(HttpStatus.OK).eTag(ETagUtils.of(id, version)).body(
                 this.messageSource.getMessage(
                         "info.user.updated",
                         null,
@@ -113,6 +245,7 @@ public class UserController {
 
     @PatchMapping("/password")
     @Operation(summary = "Обновить пароль.")
+    @RateLimited(cost = 10) //bcrypt
     public ResponseEntity<String> updatePassword(@RequestBody @Valid UserServiceUpdatePasswordRequest updatePasswordRequest,
                                                  BindingResult bindingResult){
         if(bindingResult.hasFieldErrors()) throw new ValidationException(ValidationErrorUtils.collectErrorsToString(
@@ -129,4 +262,12 @@ public class UserController {
                 )
         );
     }
+
+    private static ResponseEntity<UserDto> withETag(UserDto userDto){
+        if(userDto.getVersion() == null) return ResponseEntity.ok(userDto);
+
+        return ResponseEntity.ok()
+                .eTag(ETagUtils.of(userDto.getId(), userDto.getVersion()))
+                .body(userDto);
+    }
 }
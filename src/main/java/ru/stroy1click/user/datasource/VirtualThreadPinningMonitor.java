@@ -0,0 +1,65 @@
+package ru.stroy1click.user.datasource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ru.stroy1click.user.properties.VirtualThreadProperties;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Слушает JFR-событие jdk.VirtualThreadPinned и относит пиннинг к JDBC/транзакциям, Lettuce или прочему коду.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class VirtualThreadPinningMonitor {
+
+    private final MeterRegistry meterRegistry;
+
+    private final VirtualThreadProperties virtualThreadProperties;
+
+    private RecordingStream recordingStream;
+
+    @PostConstruct
+    public void start() {
+        this.recordingStream = new RecordingStream();
+        this.recordingStream.enable("jdk.VirtualThreadPinned")
+                .withThreshold(this.virtualThreadProperties.getPinnedThreshold())
+                .withStackTrace();
+        this.recordingStream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+        this.recordingStream.startAsync();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if(this.recordingStream != null) this.recordingStream.close();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        List<RecordedFrame> frames = event.getStackTrace() != null ? event.getStackTrace().getFrames() : List.of();
+        String source = classify(frames);
+        this.meterRegistry.counter("virtual_threads.pinned", "source", source).increment();
+        log.warn("Virtual thread pinned for {} ms ({}):\n\t{}", event.getDuration().toMillis(), source,
+                frames.stream()
+                        .limit(15)
+                        .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber())
+                        .collect(Collectors.joining("\n\t")));
+    }
+
+    private String classify(List<RecordedFrame> frames) {
+        for(RecordedFrame frame : frames){
+            String type = frame.getMethod().getType().getName();
+            if(type.startsWith("io.lettuce") || type.startsWith("org.springframework.data.redis")) return "lettuce";
+            if(type.startsWith("org.postgresql") || type.startsWith("com.zaxxer.hikari")
+                    || type.startsWith("org.hibernate") || type.startsWith("org.springframework.transaction")
+                    || type.startsWith("org.springframework.orm")) return "jdbc";
+        }
+        return "other";
+    }
+}
@@ -7,7 +7,9 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.hibernate.validator.constraints.Length;
+import ru.stroy1click.user.cache.Versioned;
 import ru.stroy1click.user.model.Role;
 
 import java.io.Serializable;
@@ -16,7 +18,7 @@ import java.io.Serializable;
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
-public class UserDto implements Serializable {
+public class UserDto implements Serializable, Versioned {
 
     private final static Long SerialVersionUID= 1L;
 
@@ -36,6 +38,7 @@ public class UserDto implements Serializable {
     private String email;
 
     @NotBlank(message = "{validation.userdto.password.not_blank}")
+    @ToString.Exclude
     private String password;
 
     @NotNull(message = "{validation.userdto.email_confirmed.not_null}")
@@ -43,4 +46,7 @@ public class UserDto implements Serializable {
 
     @NotNull(message = "{validation.userdto.role.not_null}")
     private Role role;
+
+    //версия строки в БД, задаётся только сервером
+    private Long version;
 }
@@ -0,0 +1,21 @@
+package ru.stroy1click.user.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import ru.stroy1click.user.model.UserEventType;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Событие изменения пользователя: в payload только изменённые поля, без пароля.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UserEventDto(
+        Long position,
+        Long userId,
+        UserEventType type,
+        @JsonRawValue String payload,
+        Instant createdAt
+) implements Serializable {
+}
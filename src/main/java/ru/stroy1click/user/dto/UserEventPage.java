@@ -0,0 +1,10 @@
+package ru.stroy1click.user.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * @param nextAfter позиция для следующего запроса; равна запрошенной, если новых событий нет
+ */
+public record UserEventPage(List<UserEventDto> events, long nextAfter) implements Serializable {
+}
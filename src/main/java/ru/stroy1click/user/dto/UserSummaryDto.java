@@ -0,0 +1,16 @@
+package ru.stroy1click.user.dto;
+
+import ru.stroy1click.user.model.Role;
+
+import java.io.Serializable;
+
+/**
+ * Пользователь без пароля: для выгрузок и списков.
+ */
+public record UserSummaryDto(Long id,
+                             String firstName,
+                             String lastName,
+                             String email,
+                             Boolean emailConfirmed,
+                             Role role) implements Serializable {
+}
@@ -0,0 +1,12 @@
+package ru.stroy1click.user.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Страница keyset-пагинации: следующая страница запрашивается с afterId = nextAfterId.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UserSummaryPage(List<UserSummaryDto> items, Long nextAfterId) {
+}
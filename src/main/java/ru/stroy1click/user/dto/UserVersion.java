@@ -0,0 +1,11 @@
+package ru.stroy1click.user.dto;
+
+/**
+ * Результат записи одной командой ({@code returning id, version}).
+ */
+public interface UserVersion {
+
+    Long getId();
+
+    Long getVersion();
+}
@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import ru.stroy1click.user.model.Role;
 
 @Data
@@ -16,7 +17,9 @@ import ru.stroy1click.user.model.Role;
 public class User {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    //SEQUENCE вместо IDENTITY: Hibernate получает id заранее и может вставлять пачками
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_id_seq")
+    @SequenceGenerator(name = "users_id_seq", schema = "account", sequenceName = "users_id_seq", allocationSize = 50)
     private Long id;
 
     private String firstName;
@@ -25,10 +28,15 @@ public class User {
 
     private String email;
 
+    @ToString.Exclude
     private String password;
 
     private Boolean emailConfirmed;
 
     @Enumerated(value = EnumType.STRING)
     private Role role;
+
+    //записи одной командой увеличивают её сами (version = version + 1)
+    @Version
+    private Long version;
 }
@@ -0,0 +1,39 @@
+package ru.stroy1click.user.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.stroy1click.user.model.UserEventType;
+
+import java.time.Instant;
+
+@Data
+@Entity
+@Builder
+@Table(schema = "account", name = "user_events")
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_events_id_seq")
+    @SequenceGenerator(name = "user_events_id_seq", schema = "account", sequenceName = "user_events_id_seq", allocationSize = 50)
+    private Long id;
+
+    private Long userId;
+
+    @Enumerated(value = EnumType.STRING)
+    private UserEventType type;
+
+    //изменённые поля в json, null - событие без данных
+    private String payload;
+
+    private Instant createdAt;
+
+    //позиция в потоке, назначается при публикации; null - ещё не опубликовано
+    private Long streamPosition;
+
+    private Instant publishedAt;
+}
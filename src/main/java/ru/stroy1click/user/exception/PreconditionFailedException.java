@@ -0,0 +1,8 @@
+package ru.stroy1click.user.exception;
+
+public class PreconditionFailedException extends RuntimeException {
+
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
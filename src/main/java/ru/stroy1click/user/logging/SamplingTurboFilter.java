@@ -0,0 +1,77 @@
+package ru.stroy1click.user.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пропускает каждое every-е событие уровня level от перечисленных логгеров и их потомков, даже если уровень
+ * логгера выше: частые события (чтения) видны выборкой, а не целиком. Остальные события этого уровня
+ * решаются обычной проверкой уровня. Счётчик у каждого логгера свой. Решение принимается
+ * до создания события, поэтому отброшенный вызов почти ничего не стоит, в том числе через
+ * {@code log.atDebug()}.
+ * <pre>{@code
+ * <turboFilter class="ru.stroy1click.user.logging.SamplingTurboFilter">
+ *     <logger>ru.stroy1click.user.service.impl.UserServiceImpl</logger>
+ *     <logger>ru.stroy1click.user.cache.CacheClear</logger>
+ *     <level>DEBUG</level>
+ *     <every>100</every>
+ * </turboFilter>
+ * }</pre>
+ */
+public class SamplingTurboFilter extends TurboFilter {
+
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    //только явно названные логгеры: DEBUG остального кода в прод не попадает
+    private final List<String> loggers = new CopyOnWriteArrayList<>();
+
+    private Level level = Level.DEBUG;
+
+    private long every = 100;
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if(!isStarted() || level != this.level || !matches(logger.getName())) return FilterReply.NEUTRAL;
+
+        long count = this.counters.computeIfAbsent(logger.getName(), name -> new AtomicLong()).getAndIncrement();
+        return count % this.every == 0 ? FilterReply.ACCEPT : FilterReply.NEUTRAL;
+    }
+
+    private boolean matches(String name) {
+        for(String logger : this.loggers){
+            if(name.equals(logger) || name.startsWith(logger) && name.charAt(logger.length()) == '.') return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void start() {
+        if(this.every < 1){
+            addError("every must be positive for " + getName());
+            return;
+        }
+        super.start();
+    }
+
+    //повторяемый элемент <logger>
+    public void addLogger(String logger) {
+        this.loggers.add(logger.trim());
+    }
+
+    public void setLevel(String level) {
+        this.level = Level.toLevel(level, Level.DEBUG);
+    }
+
+    public void setEvery(long every) {
+        this.every = every;
+    }
+}
@@ -0,0 +1,7 @@
+package ru.stroy1click.user.mapper;
+
+import ru.stroy1click.user.dto.UserEventDto;
+import ru.stroy1click.user.entity.UserEvent;
+
+public interface UserEventMapper extends Mappable<UserEvent, UserEventDto> {
+}
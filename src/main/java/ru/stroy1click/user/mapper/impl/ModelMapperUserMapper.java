@@ -0,0 +1,29 @@
+package ru.stroy1click.user.mapper.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.modelmapper.ModelMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.entity.User;
+import ru.stroy1click.user.mapper.UserMapper;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "mapper.user", havingValue = "modelmapper")
+public class ModelMapperUserMapper implements UserMapper {
+
+    private final ModelMapper modelMapper;
+
+    @Override
+    public User toEntity(UserDto userDto) {
+        User user = this.modelMapper.map(userDto, User.class);
+        user.setVersion(null); //версию задаёт только БД, как и в UserMapperImpl
+        return user;
+    }
+
+    @Override
+    public UserDto toDto(User userCredential) {
+        return this.modelMapper.map(userCredential, UserDto.class);
+    }
+}
@@ -0,0 +1,36 @@
+package ru.stroy1click.user.mapper.impl;
+
+import org.springframework.stereotype.Component;
+import ru.stroy1click.user.dto.UserEventDto;
+import ru.stroy1click.user.entity.UserEvent;
+import ru.stroy1click.user.mapper.UserEventMapper;
+
+@Component
+public class UserEventMapperImpl implements UserEventMapper {
+
+    @Override
+    public UserEvent toEntity(UserEventDto userEventDto) {
+        if(userEventDto == null) return null;
+
+        return UserEvent.builder()
+                .userId(userEventDto.userId())
+                .type(userEventDto.type())
+                .payload(userEventDto.payload())
+                .createdAt(userEventDto.createdAt())
+                .streamPosition(userEventDto.position())
+                .build();
+    }
+
+    @Override
+    public UserEventDto toDto(UserEvent userEvent) {
+        if(userEvent == null) return null;
+
+        return new UserEventDto(
+                userEvent.getStreamPosition(),
+                userEvent.getUserId(),
+                userEvent.getType(),
+                userEvent.getPayload(),
+                userEvent.getCreatedAt()
+        );
+    }
+}
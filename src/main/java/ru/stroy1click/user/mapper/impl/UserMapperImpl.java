@@ -0,0 +1,59 @@
+package ru.stroy1click.user.mapper.impl;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.entity.User;
+import ru.stroy1click.user.mapper.UserMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Маппер без рефлексии. Реализация на ModelMapper остаётся доступной через mapper.user=modelmapper.
+ */
+@Component
+@ConditionalOnProperty(name = "mapper.user", havingValue = "manual", matchIfMissing = true)
+public class UserMapperImpl implements UserMapper {
+
+    @Override
+    public User toEntity(UserDto userDto) {
+        if(userDto == null) return null;
+
+        return new User(
+                userDto.getId(),
+                userDto.getFirstName(),
+                userDto.getLastName(),
+                userDto.getEmail(),
+                userDto.getPassword(),
+                userDto.getEmailConfirmed(),
+                userDto.getRole(),
+                null //версию задаёт только БД
+        );
+    }
+
+    @Override
+    public UserDto toDto(User user) {
+        if(user == null) return null;
+
+        return new UserDto(
+                user.getId(),
+                user.getFirstName(),
+                user.getLastName(),
+                user.getEmail(),
+                user.getPassword(),
+                user.getEmailConfirmed(),
+                user.getRole(),
+                user.getVersion()
+        );
+    }
+
+    @Override
+    public List<UserDto> toDto(List<User> users) {
+        List<UserDto> userDtos = new ArrayList<>(users.size());
+        for(User user : users){
+            userDtos.add(toDto(user));
+        }
+        return userDtos;
+    }
+}
@@ -0,0 +1,21 @@
+package ru.stroy1click.user.model;
+
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserBatchRequest {
+
+    @Size(max = 500, message = "{validation.user_batch_request.ids.size}")
+    private List<Long> ids = new ArrayList<>();
+
+    @Size(max = 500, message = "{validation.user_batch_request.emails.size}")
+    private List<String> emails = new ArrayList<>();
+}
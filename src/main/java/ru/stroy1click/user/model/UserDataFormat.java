@@ -0,0 +1,5 @@
+package ru.stroy1click.user.model;
+
+public enum UserDataFormat {
+    NDJSON, CSV
+}
@@ -0,0 +1,21 @@
+package ru.stroy1click.user.model;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserEventRequest {
+
+    @PositiveOrZero(message = "{validation.user_event_request.after.positive_or_zero}")
+    private Long after = 0L;
+
+    @Min(value = 1, message = "{validation.user_event_request.limit.size}")
+    @Max(value = 1000, message = "{validation.user_event_request.limit.size}")
+    private Integer limit = 100;
+}
@@ -0,0 +1,9 @@
+package ru.stroy1click.user.model;
+
+public enum UserEventType {
+    CREATED,
+    UPDATED,
+    EMAIL_CONFIRMED,
+    PASSWORD_CHANGED,
+    DELETED
+}
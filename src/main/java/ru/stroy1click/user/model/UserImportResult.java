@@ -0,0 +1,19 @@
+package ru.stroy1click.user.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UserImportResult(long line, Status status, Long id, String error) {
+
+    public static UserImportResult created(long line, Long id){
+        return new UserImportResult(line, Status.CREATED, id, null);
+    }
+
+    public static UserImportResult failed(long line, String error){
+        return new UserImportResult(line, Status.FAILED, null, error);
+    }
+
+    public enum Status {
+        CREATED, FAILED
+    }
+}
@@ -0,0 +1,25 @@
+package ru.stroy1click.user.model;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserListRequest {
+
+    @PositiveOrZero(message = "{validation.user_list_request.after_id.positive_or_zero}")
+    private Long afterId = 0L;
+
+    @Min(value = 1, message = "{validation.user_list_request.limit.size}")
+    @Max(value = 500, message = "{validation.user_list_request.limit.size}")
+    private Integer limit = 50;
+
+    private Role role;
+
+    private Boolean emailConfirmed;
+}
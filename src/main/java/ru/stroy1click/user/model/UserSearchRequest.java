@@ -0,0 +1,23 @@
+package ru.stroy1click.user.model;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.validator.constraints.Length;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserSearchRequest {
+
+    @NotBlank(message = "{validation.user_search_request.query.not_blank}")
+    @Length(max = 50, message = "{validation.user_search_request.query.length}")
+    private String query;
+
+    @Min(value = 1, message = "{validation.user_search_request.limit.size}")
+    @Max(value = 100, message = "{validation.user_search_request.limit.size}")
+    private Integer limit = 20;
+}
@@ -5,6 +5,7 @@ import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.hibernate.validator.constraints.Length;
 
 @Data
@@ -14,6 +15,7 @@ public class UserServiceUpdatePasswordRequest {
 
     @NotBlank(message = "{validation.user_service_update_password_request.new_password.not_blank}")
     @Size(min = 8, max = 50, message = "{validation.user_service_update_password_request.new_password.length}")
+    @ToString.Exclude
     private String newPassword;
 
     @NotBlank(message = "{validation.user_service_update_password_request.email.not_blank}")
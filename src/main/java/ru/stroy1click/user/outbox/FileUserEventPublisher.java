@@ -0,0 +1,45 @@
+package ru.stroy1click.user.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.stroy1click.user.dto.UserEventDto;
+import ru.stroy1click.user.properties.OutboxProperties;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Заглушка для локального запуска: дописывает события в ndjson-файл outbox.file.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.publisher", havingValue = "file")
+public class FileUserEventPublisher implements UserEventPublisher {
+
+    private final Path file;
+
+    private final ObjectWriter eventWriter;
+
+    public FileUserEventPublisher(OutboxProperties outboxProperties, ObjectMapper objectMapper) {
+        this.file = Path.of(outboxProperties.getFile());
+        this.eventWriter = objectMapper.writerFor(UserEventDto.class);
+    }
+
+    @Override
+    public synchronized void publish(List<UserEventDto> events) {
+        try(OutputStream output = Files.newOutputStream(this.file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)){
+            for(UserEventDto event : events){
+                output.write(this.eventWriter.writeValueAsBytes(event));
+                output.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append user events to " + this.file, e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ru.stroy1click.user.outbox;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.stroy1click.user.dto.UserEventDto;
+import ru.stroy1click.user.properties.OutboxProperties;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Заглушка для локального запуска и тестов: хранит последние outbox.memory-capacity событий.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.publisher", havingValue = "memory", matchIfMissing = true)
+public class InMemoryUserEventPublisher implements UserEventPublisher {
+
+    private final Deque<UserEventDto> events = new ArrayDeque<>();
+
+    private final int capacity;
+
+    public InMemoryUserEventPublisher(OutboxProperties outboxProperties) {
+        this.capacity = outboxProperties.getMemoryCapacity();
+    }
+
+    @Override
+    public synchronized void publish(List<UserEventDto> events) {
+        for(UserEventDto event : events){
+            if(this.events.size() == this.capacity) this.events.removeFirst();
+            this.events.addLast(event);
+        }
+    }
+
+    public synchronized List<UserEventDto> getPublished() {
+        return new ArrayList<>(this.events);
+    }
+}
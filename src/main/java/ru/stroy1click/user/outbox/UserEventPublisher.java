@@ -0,0 +1,14 @@
+package ru.stroy1click.user.outbox;
+
+import ru.stroy1click.user.dto.UserEventDto;
+
+import java.util.List;
+
+/**
+ * Публикация событий из outbox во внешний канал. Вызывается внутри транзакции relay:
+ * исключение откатывает её, и пакет публикуется повторно (at-least-once, потребители дедуплицируют по position).
+ */
+public interface UserEventPublisher {
+
+    void publish(List<UserEventDto> events);
+}
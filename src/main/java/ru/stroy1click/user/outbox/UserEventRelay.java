@@ -0,0 +1,114 @@
+package ru.stroy1click.user.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.stroy1click.user.dto.UserEventDto;
+import ru.stroy1click.user.entity.UserEvent;
+import ru.stroy1click.user.mapper.UserEventMapper;
+import ru.stroy1click.user.properties.OutboxProperties;
+import ru.stroy1click.user.repository.UserEventRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Переносит события из outbox в {@link UserEventPublisher} пакетами. Позиция в потоке назначается здесь,
+ * под advisory-блокировкой, а не при вставке: событие транзакции, закоммиченной позже, получит большую позицию,
+ * даже если его id меньше, и потребитель, читающий поток с позиции, его не пропустит.
+ * Опубликованные события старше outbox.retention удаляются пакетами под той же блокировкой.
+ */
+@Slf4j
+@Component
+public class UserEventRelay {
+
+    private static final long LOCK_KEY = 0x5573_6572_4576_7473L;
+
+    private final UserEventRepository userEventRepository;
+
+    private final UserEventMapper userEventMapper;
+
+    private final UserEventPublisher userEventPublisher;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final OutboxProperties outboxProperties;
+
+    private final Counter publishedCounter;
+
+    private final Counter deletedCounter;
+
+    public UserEventRelay(UserEventRepository userEventRepository, UserEventMapper userEventMapper,
+                          UserEventPublisher userEventPublisher, TransactionTemplate transactionTemplate,
+                          OutboxProperties outboxProperties, MeterRegistry meterRegistry) {
+        this.userEventRepository = userEventRepository;
+        this.userEventMapper = userEventMapper;
+        this.userEventPublisher = userEventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.outboxProperties = outboxProperties;
+        this.publishedCounter = Counter.builder("outbox.published")
+                .description("User change events published from the outbox")
+                .register(meterRegistry);
+        this.deletedCounter = Counter.builder("outbox.deleted")
+                .description("Published user change events removed from the outbox after retention")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${outbox.relay-interval}", fixedDelayString = "${outbox.relay-interval}")
+    public void relay(){
+        try {
+            int published;
+            do {
+                published = Objects.requireNonNull(this.transactionTemplate.execute(status -> relayBatch()));
+            } while (published == this.outboxProperties.getBatchSize());
+        } catch (RuntimeException e) {
+            //пакет откатился и останется неопубликованным до следующего запуска
+            log.warn("Failed to relay user events", e);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${outbox.cleanup-interval}", fixedDelayString = "${outbox.cleanup-interval}")
+    public void cleanup(){
+        Instant before = Instant.now().minus(this.outboxProperties.getRetention());
+        try {
+            int deleted;
+            do {
+                deleted = Objects.requireNonNull(this.transactionTemplate.execute(status -> cleanupBatch(before)));
+                this.deletedCounter.increment(deleted);
+            } while (deleted == this.outboxProperties.getBatchSize());
+        } catch (RuntimeException e) {
+            log.warn("Failed to clean up published user events", e);
+        }
+    }
+
+    //короткие транзакции по batch-size строк, чтобы не держать блокировку relay и не раздувать WAL
+    private int cleanupBatch(Instant before){
+        if(!this.userEventRepository.tryLockRelay(LOCK_KEY)) return 0;
+        return this.userEventRepository.deletePublishedBefore(before, this.outboxProperties.getBatchSize());
+    }
+
+    private int relayBatch(){
+        if(!this.userEventRepository.tryLockRelay(LOCK_KEY)) return 0;
+
+        List<UserEvent> events = this.userEventRepository.findUnpublished(this.outboxProperties.getBatchSize());
+        if(events.isEmpty()) return 0;
+
+        long position = this.userEventRepository.findLastPosition();
+        Instant now = Instant.now();
+        List<UserEventDto> published = new ArrayList<>(events.size());
+        for(UserEvent event : events){
+            event.setStreamPosition(++position);
+            event.setPublishedAt(now);
+            published.add(this.userEventMapper.toDto(event));
+        }
+        //позиции сохранятся при коммите, только если публикация прошла
+        this.userEventPublisher.publish(published);
+        this.publishedCounter.increment(published.size());
+        return published.size();
+    }
+}
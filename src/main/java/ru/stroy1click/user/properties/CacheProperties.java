@@ -0,0 +1,105 @@
+package ru.stroy1click.user.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import ru.stroy1click.user.cache.CacheFormat;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+@Data
+@ConfigurationProperties(prefix = "cache")
+public class CacheProperties {
+
+    private Duration ttl = Duration.ofSeconds(40);
+
+    //сколько помнить, что id или email нет в БД; создание пользователя удаляет такие записи сразу
+    private Duration negativeTtl = Duration.ofSeconds(5);
+
+    //доля ttl, на которую он случайно меняется, чтобы записи одной волны не истекали разом
+    private double jitter = 0.1;
+
+    //коэффициент вероятностного раннего обновления (XFetch), 0 - выключено
+    private double refreshAhead = 1.0;
+
+    private String invalidationChannel = "user-service:cache-invalidation";
+
+    private CacheFormat format = CacheFormat.BINARY;
+
+    //тело значения длиннее порога сжимается, 0 - не сжимать
+    private int compressionThreshold = 512;
+
+    //настройки отдельных кэшей по имени, незаданное берётся из общих
+    private Map<String, Spec> caches = new HashMap<>();
+
+    private Local local = new Local();
+
+    private Lease lease = new Lease();
+
+    private Versioning versioning = new Versioning();
+
+    /**
+     * Настройки кэша с подставленными общими значениями вместо незаданных.
+     */
+    public Spec getSpec(String name) {
+        Spec spec = this.caches.getOrDefault(name, new Spec());
+        Spec resolved = new Spec();
+        resolved.setFormat(Objects.requireNonNullElse(spec.getFormat(), this.format));
+        resolved.setTtl(Objects.requireNonNullElse(spec.getTtl(), this.ttl));
+        resolved.setNegativeTtl(Objects.requireNonNullElse(spec.getNegativeTtl(), this.negativeTtl));
+        resolved.setJitter(Objects.requireNonNullElse(spec.getJitter(), this.jitter));
+        resolved.setRefreshAhead(Objects.requireNonNullElse(spec.getRefreshAhead(), this.refreshAhead));
+        return resolved;
+    }
+
+    @Data
+    public static class Local {
+
+        private long maximumSize = 10_000;
+
+        //должен быть меньше ttl в redis, ограничивает устаревание, если сообщение об инвалидации потерялось
+        private Duration ttl = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Spec {
+
+        private CacheFormat format;
+
+        private Duration ttl;
+
+        private Duration negativeTtl;
+
+        private Double jitter;
+
+        private Double refreshAhead;
+    }
+
+    @Data
+    public static class Lease {
+
+        //аренда ключа на время загрузки из БД, чтобы при промахе в базу шёл один узел кластера
+        private boolean enabled = false;
+
+        //с запасом больше времени загрузки, иначе аренда истечёт и загрузка продублируется
+        private Duration ttl = Duration.ofSeconds(2);
+
+        //сколько остальные узлы ждут значение в Redis, прежде чем грузить сами
+        private Duration wait = Duration.ofMillis(300);
+
+        private Duration pollInterval = Duration.ofMillis(20);
+    }
+
+    @Data
+    public static class Versioning {
+
+        //запись в Redis только если значение не старше версии, которую зафиксировала инвалидация после коммита
+        private boolean enabled = true;
+
+        //сколько помнить эту версию: с запасом больше самой долгой загрузки из БД
+        private Duration floorTtl = Duration.ofSeconds(10);
+    }
+}
@@ -0,0 +1,51 @@
+package ru.stroy1click.user.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    private boolean enabled = true;
+
+    //лимит одновременных запросов на узел: стартовый и границы, в которых он подстраивается
+    private int initialLimit = 50;
+
+    private int minLimit = 10;
+
+    private int maxLimit = 500;
+
+    //во сколько раз текущая задержка может превысить базовую, прежде чем лимит начнёт снижаться
+    private double tolerance = 2.0;
+
+    //за сколько непрерывной перегрузки базовая задержка дорастает в tolerance раз,
+    //то есть через сколько устойчиво возросшая задержка начинает считаться нормой
+    private Duration baselineRecovery = Duration.ofMinutes(5);
+
+    //доля нового значения при пересчёте лимита: чем меньше, тем плавнее он меняется
+    private double smoothing = 0.2;
+
+    //во сколько раз снижать лимит, если в окне были ответы 5xx
+    private double backoffRatio = 0.9;
+
+    //доля лимита, которую могут занять только чтения: записи отсекаются раньше
+    private double readReserve = 0.3;
+
+    //лимит пересчитывается не чаще раза в окно и не меньше чем по стольким замерам
+    private Duration window = Duration.ofMillis(100);
+
+    private int minWindowSamples = 10;
+
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    //чтения кроме GET и HEAD
+    private List<String> readPaths = new ArrayList<>(List.of("/api/v1/users/batch"));
+
+    //долгие потоковые запросы не должны считаться задержкой и занимать лимит
+    private List<String> excludedPaths = new ArrayList<>(List.of("/api/v1/users/export", "/api/v1/users/import"));
+}
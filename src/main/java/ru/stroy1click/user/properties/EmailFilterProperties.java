@@ -0,0 +1,18 @@
+package ru.stroy1click.user.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "email-filter")
+public class EmailFilterProperties {
+
+    private long expectedInsertions = 1_000_000;
+
+    private double falsePositiveProbability = 0.01;
+
+    //удалённые email остаются в фильтре до следующей перестройки
+    private Duration rebuildInterval = Duration.ofHours(1);
+}
@@ -0,0 +1,20 @@
+package ru.stroy1click.user.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "hashing")
+public class HashingProperties {
+
+    //0 - по числу ядер
+    private int threads = 0;
+
+    private int queueCapacity = 64;
+
+    private Duration timeout = Duration.ofSeconds(5);
+
+    private Duration retryAfter = Duration.ofSeconds(1);
+}
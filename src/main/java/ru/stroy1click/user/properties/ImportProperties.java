@@ -0,0 +1,15 @@
+package ru.stroy1click.user.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "import")
+public class ImportProperties {
+
+    //строк в одной транзакции и одном JDBC batch
+    private int batchSize = 500;
+
+    //строка длиннее считается ошибочной и в память целиком не читается
+    private int maxLineLength = 8192;
+}
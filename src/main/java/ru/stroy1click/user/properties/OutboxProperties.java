@@ -0,0 +1,30 @@
+package ru.stroy1click.user.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "outbox")
+public class OutboxProperties {
+
+    private Duration relayInterval = Duration.ofMillis(500);
+
+    //событий в одной публикации и одной транзакции relay
+    private int batchSize = 500;
+
+    //сколько хранить опубликованные события: потребитель, отставший сильнее, теряет их
+    private Duration retention = Duration.ofDays(7);
+
+    private Duration cleanupInterval = Duration.ofHours(1);
+
+    //memory или file; для брокера добавляется своя реализация UserEventPublisher
+    private String publisher = "memory";
+
+    //сколько последних событий хранит memory-публикатор
+    private int memoryCapacity = 10_000;
+
+    //ndjson-файл file-публикатора
+    private String file = "user-events.ndjson";
+}
@@ -0,0 +1,71 @@
+package ru.stroy1click.user.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+@Data
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    //заголовок с идентификатором клиента; без него клиентом считается адрес
+    private String clientHeader = "X-Client-Id";
+
+    //адреса шлюзов, которым верим в clientHeader; от остальных заголовок игнорируется, иначе
+    //клиент обходит лимит новым значением на каждый запрос и вытесняет чужие бакеты
+    private Set<String> trustedProxies = new HashSet<>();
+
+    //бакет клиента на один эндпоинт, в единицах стоимости (см. @RateLimited)
+    private Bucket bucket = new Bucket();
+
+    //бакеты отдельных эндпоинтов по имени метода контроллера, незаданное берётся из bucket
+    private Map<String, Bucket> endpoints = new HashMap<>();
+
+    //сколько пар клиент-эндпоинт помнить на узле и сколько держать неактивные
+    private long maxBuckets = 100_000;
+
+    private Duration idleTimeout = Duration.ofMinutes(10);
+
+    private Cluster cluster = new Cluster();
+
+    /**
+     * Бакет эндпоинта с подставленными общими значениями вместо незаданных.
+     */
+    public Bucket getBucket(String endpoint) {
+        Bucket override = this.endpoints.get(endpoint);
+        if(override == null) return this.bucket;
+
+        Bucket resolved = new Bucket();
+        resolved.setRate(override.getRate() > 0 ? override.getRate() : this.bucket.getRate());
+        resolved.setCapacity(override.getCapacity() > 0 ? override.getCapacity() : this.bucket.getCapacity());
+        return resolved;
+    }
+
+    @Data
+    public static class Bucket {
+
+        //пополнение в секунду
+        private double rate = 100;
+
+        //допустимый всплеск; не меньше самой большой стоимости, иначе такой вызов не пройдёт никогда
+        private long capacity = 100;
+    }
+
+    @Data
+    public static class Cluster {
+
+        //общий на кластер бюджет клиента в секунду; узлы берут его из Redis пачками, а не на каждый запрос
+        private boolean enabled = false;
+
+        private long budgetPerSecond = 1000;
+
+        private long leaseSize = 50;
+    }
+}
@@ -0,0 +1,16 @@
+package ru.stroy1click.user.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "virtual-threads")
+public class VirtualThreadProperties {
+
+    //о пиннинге дольше этого порога пишем в лог и в метрики
+    private Duration pinnedThreshold = Duration.ofMillis(20);
+
+    private Duration connectionWait = Duration.ofSeconds(2);
+}
@@ -0,0 +1,157 @@
+package ru.stroy1click.user.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.stroy1click.user.properties.ConcurrencyLimitProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Лимит одновременных запросов узла, подстраиваемый по задержке. Раз в окно средняя задержка окна
+ * сравнивается с базовой - задержкой без перегрузки: пока она в пределах concurrency-limit.tolerance,
+ * лимит растёт на sqrt(limit), дальше снижается пропорционально росту задержки, а при ответах 5xx -
+ * в concurrency-limit.backoff-ratio раз. Так медленные Postgres или Redis сами уменьшают число
+ * пропускаемых запросов, и очередь не копится в пуле соединений.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    //вес незагруженного окна в базовой задержке: она догоняет новую задержку примерно за 20 окон
+    private static final double BASELINE_WEIGHT = 0.05;
+
+    private final ConcurrencyLimitProperties concurrencyLimitProperties;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    //пик одновременных запросов в окне: без нагрузки низкая задержка не повод поднимать лимит
+    private final AtomicInteger peakInflight = new AtomicInteger();
+
+    private final LongAdder windowRtt = new LongAdder();
+
+    private final LongAdder windowSamples = new LongAdder();
+
+    private final LongAdder windowDrops = new LongAdder();
+
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    private final Counter readRejected;
+
+    private final Counter writeRejected;
+
+    private volatile double limit;
+
+    //под updateLock
+    private double baselineRtt;
+
+    public AdaptiveConcurrencyLimiter(ConcurrencyLimitProperties concurrencyLimitProperties, MeterRegistry meterRegistry) {
+        this.concurrencyLimitProperties = concurrencyLimitProperties;
+        this.limit = concurrencyLimitProperties.getInitialLimit();
+        Gauge.builder("concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("concurrency.inflight", this, AdaptiveConcurrencyLimiter::getInflight)
+                .description("Requests currently admitted by the concurrency limiter")
+                .register(meterRegistry);
+        this.readRejected = rejectedCounter(meterRegistry, "read");
+        this.writeRejected = rejectedCounter(meterRegistry, "write");
+    }
+
+    /**
+     * Чтения могут занять весь лимит, записи - только его часть без concurrency-limit.read-reserve.
+     *
+     * @return false, если запрос нужно отклонить
+     */
+    public boolean tryAcquire(boolean read) {
+        int max = read
+                ? (int) this.limit
+                : Math.max(1, (int) (this.limit * (1 - this.concurrencyLimitProperties.getReadReserve())));
+        while(true){
+            int current = this.inflight.get();
+            if(current >= max){
+                (read ? this.readRejected : this.writeRejected).increment();
+                return false;
+            }
+            if(this.inflight.compareAndSet(current, current + 1)){
+                this.peakInflight.accumulateAndGet(current + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param dropped запрос завершился ошибкой сервера
+     */
+    public void release(long rttNanos, boolean dropped) {
+        this.inflight.decrementAndGet();
+        this.windowRtt.add(rttNanos);
+        this.windowSamples.increment();
+        if(dropped) this.windowDrops.increment();
+
+        long now = System.nanoTime();
+        if(now - this.windowStart.get() < this.concurrencyLimitProperties.getWindow().toNanos()
+                || this.windowSamples.sum() < this.concurrencyLimitProperties.getMinWindowSamples()) return;
+        //окно закрывает один поток, остальные не ждут его
+        if(!this.updateLock.tryLock()) return;
+        try {
+            long samples = this.windowSamples.sumThenReset();
+            if(samples == 0) return;
+            updateLimit((double) this.windowRtt.sumThenReset() / samples, this.windowDrops.sumThenReset() > 0,
+                    this.peakInflight.getAndSet(this.inflight.get()), now - this.windowStart.get());
+            this.windowStart.set(now);
+        } finally {
+            this.updateLock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        return (int) this.limit;
+    }
+
+    public int getInflight() {
+        return this.inflight.get();
+    }
+
+    private void updateLimit(double rtt, boolean dropped, int peak, long elapsedNanos) {
+        updateBaseline(rtt, elapsedNanos);
+
+        double current = this.limit;
+        double target;
+        if(dropped){
+            target = current * this.concurrencyLimitProperties.getBackoffRatio();
+        } else {
+            double gradient = Math.clamp(this.concurrencyLimitProperties.getTolerance() * this.baselineRtt / rtt, 0.5, 1.0);
+            target = current * gradient + (peak >= current / 2 ? Math.sqrt(current) : 0);
+        }
+        double smoothing = this.concurrencyLimitProperties.getSmoothing();
+        this.limit = Math.clamp(current * (1 - smoothing) + target * smoothing,
+                this.concurrencyLimitProperties.getMinLimit(), this.concurrencyLimitProperties.getMaxLimit());
+    }
+
+    private void updateBaseline(double rtt, long elapsedNanos) {
+        double tolerance = this.concurrencyLimitProperties.getTolerance();
+        if(this.baselineRtt == 0 || rtt < this.baselineRtt){
+            this.baselineRtt = rtt;
+        } else if(rtt <= tolerance * this.baselineRtt){
+            this.baselineRtt = this.baselineRtt * (1 - BASELINE_WEIGHT) + rtt * BASELINE_WEIGHT;
+        } else {
+            //в перегруженном окне базовая почти стоит: иначе она догонит медленную БД и лимит перестанет снижаться;
+            //медленный рост лишь не даёт навсегда застрять на min-limit, если задержка выросла насовсем
+            this.baselineRtt *= Math.pow(tolerance,
+                    (double) elapsedNanos / this.concurrencyLimitProperties.getBaselineRecovery().toNanos());
+        }
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String priority) {
+        return Counter.builder("concurrency.rejected")
+                .description("Requests shed by the adaptive concurrency limiter")
+                .tag("priority", priority)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,69 @@
+package ru.stroy1click.user.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.stroy1click.user.properties.RateLimitProperties;
+
+import java.time.Duration;
+
+/**
+ * Лимит на пару клиент-эндпоинт: сначала локальный {@link TokenBucket} узла, затем, если включён,
+ * общий бюджет клиента на кластер ({@link ClusterRateBudget}).
+ */
+@Component
+public class ClientRateLimiter {
+
+    private final RateLimitProperties rateLimitProperties;
+
+    private final ClusterRateBudget clusterRateBudget;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Cache<String, TokenBucket> buckets;
+
+    public ClientRateLimiter(RateLimitProperties rateLimitProperties, ClusterRateBudget clusterRateBudget,
+                             MeterRegistry meterRegistry) {
+        this.rateLimitProperties = rateLimitProperties;
+        this.clusterRateBudget = clusterRateBudget;
+        this.meterRegistry = meterRegistry;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(rateLimitProperties.getMaxBuckets())
+                .expireAfterAccess(rateLimitProperties.getIdleTimeout())
+                .build();
+    }
+
+    /**
+     * @return null, если вызов разрешён, иначе через сколько его повторить
+     */
+    public Duration tryAcquire(String client, String endpoint, int cost) {
+        long now = System.nanoTime();
+        TokenBucket bucket = this.buckets.get(client + '|' + endpoint, key -> {
+            RateLimitProperties.Bucket spec = this.rateLimitProperties.getBucket(endpoint);
+            return new TokenBucket(spec.getRate(), spec.getCapacity(), now);
+        });
+
+        long waitNanos = bucket.tryAcquire(cost, now);
+        if(waitNanos > 0){
+            rejected(endpoint, "local");
+            return Duration.ofNanos(waitNanos);
+        }
+        if(this.clusterRateBudget.isEnabled() && !this.clusterRateBudget.tryAcquire(client, cost, System.currentTimeMillis())){
+            rejected(endpoint, "cluster");
+            //бюджет кластера считается посекундно
+            return Duration.ofSeconds(1);
+        }
+        return null;
+    }
+
+    private void rejected(String endpoint, String scope) {
+        Counter.builder("rate_limit.rejected")
+                .description("Requests rejected by the per-client rate limiter")
+                .tag("endpoint", endpoint)
+                .tag("scope", scope)
+                .register(this.meterRegistry)
+                .increment();
+    }
+}
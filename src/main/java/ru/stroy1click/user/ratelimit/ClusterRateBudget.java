@@ -0,0 +1,120 @@
+package ru.stroy1click.user.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import ru.stroy1click.user.properties.RateLimitProperties;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Общий на кластер бюджет клиента на секунду. Узел берёт из Redis сразу rate-limit.cluster.lease-size
+ * единиц и тратит их локально, поэтому в Redis идёт один запрос на пачку, а не на каждый вызов.
+ * Невыбранный к концу секунды остаток пропадает: лимит соблюдается с запасом, а не превышается.
+ */
+@Slf4j
+@Component
+public class ClusterRateBudget {
+
+    //сколько из запрошенной пачки ещё помещается в бюджет окна
+    private static final RedisScript<Long> LEASE_SCRIPT = RedisScript.of("""
+            local used = redis.call('incrby', KEYS[1], ARGV[1])
+            if used == tonumber(ARGV[1]) then
+                redis.call('expire', KEYS[1], 2)
+            end
+            local before = used - tonumber(ARGV[1])
+            return math.max(0, math.min(tonumber(ARGV[1]), tonumber(ARGV[2]) - before))""", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RateLimitProperties rateLimitProperties;
+
+    private final Cache<String, Lease> leases;
+
+    public ClusterRateBudget(StringRedisTemplate stringRedisTemplate, RateLimitProperties rateLimitProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.rateLimitProperties = rateLimitProperties;
+        this.leases = Caffeine.newBuilder()
+                .maximumSize(rateLimitProperties.getMaxBuckets())
+                .expireAfterAccess(rateLimitProperties.getIdleTimeout())
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return this.rateLimitProperties.getCluster().isEnabled();
+    }
+
+    /**
+     * @param now {@link System#currentTimeMillis()}
+     */
+    public boolean tryAcquire(String client, int cost, long now) {
+        long window = now / 1000;
+        Lease lease = this.leases.get(client, key -> new Lease());
+        if(lease.tryTake(window, cost)) return true;
+
+        //пачка кончилась: новую берёт один поток, остальные ждут его, а не идут в Redis сами.
+        //ReentrantLock, а не synchronized: ожидание Redis не должно пиннить виртуальный поток
+        lease.lock.lock();
+        try {
+            if(lease.tryTake(window, cost)) return true;
+            if(lease.exhaustedWindow == window) return false;
+
+            long granted = lease(client, window, Math.max(cost, this.rateLimitProperties.getCluster().getLeaseSize()));
+            lease.refill(window, granted);
+            if(lease.tryTake(window, cost)) return true;
+
+            lease.exhaustedWindow = window;
+            return false;
+        } finally {
+            lease.lock.unlock();
+        }
+    }
+
+    private long lease(String client, long window, long size) {
+        try {
+            Long granted = this.stringRedisTemplate.execute(LEASE_SCRIPT,
+                    List.of("rate-limit:" + client + ":" + window),
+                    String.valueOf(size), String.valueOf(this.rateLimitProperties.getCluster().getBudgetPerSecond()));
+            return granted == null ? 0 : granted;
+        } catch (RuntimeException e) {
+            //без Redis остаются локальные бакеты
+            log.warn("Failed to lease cluster rate budget for {}", client, e);
+            return size;
+        }
+    }
+
+    private static class Lease {
+
+        private volatile long window = -1;
+
+        private volatile long exhaustedWindow = -1;
+
+        private final AtomicLong remaining = new AtomicLong();
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private boolean tryTake(long currentWindow, int cost) {
+            if(this.window != currentWindow) return false;
+            if(this.remaining.addAndGet(-cost) >= 0) return true;
+
+            this.remaining.addAndGet(cost);
+            return false;
+        }
+
+        //под lock
+        private void refill(long currentWindow, long granted) {
+            if(this.window != currentWindow){
+                //сначала остаток, потом окно: иначе новое окно успели бы тратить из остатка старого
+                this.remaining.set(granted);
+                this.window = currentWindow;
+            } else {
+                this.remaining.addAndGet(granted);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ru.stroy1click.user.ratelimit;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.MessageSource;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import ru.stroy1click.user.exception.ServiceOverloadedException;
+import ru.stroy1click.user.properties.ConcurrencyLimitProperties;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Сбрасывает лишнюю нагрузку на /api/v1/users до контроллера: сверх {@link AdaptiveConcurrencyLimiter}
+ * запрос сразу получает 503 с Retry-After, а не ждёт соединения с БД.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final String USERS_PATH = "/api/v1/users";
+
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+
+    private final ConcurrencyLimitProperties concurrencyLimitProperties;
+
+    private final MessageSource messageSource;
+
+    //ответ отдаёт AdviceController, как и для остальных 503
+    private final HandlerExceptionResolver handlerExceptionResolver;
+
+    public ConcurrencyLimitFilter(AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+                                  ConcurrencyLimitProperties concurrencyLimitProperties,
+                                  MessageSource messageSource,
+                                  @Qualifier("handlerExceptionResolver") HandlerExceptionResolver handlerExceptionResolver) {
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.concurrencyLimitProperties = concurrencyLimitProperties;
+        this.messageSource = messageSource;
+        this.handlerExceptionResolver = handlerExceptionResolver;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        return !this.concurrencyLimitProperties.isEnabled()
+                || !path.startsWith(USERS_PATH)
+                || this.concurrencyLimitProperties.getExcludedPaths().contains(path);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        if(!this.adaptiveConcurrencyLimiter.tryAcquire(isRead(request))){
+            this.handlerExceptionResolver.resolveException(request, response, null,
+                    new ServiceOverloadedException(
+                            this.messageSource.getMessage(
+                                    "error.details.overloaded",
+                                    null,
+                                    Locale.getDefault()
+                            ),
+                            this.concurrencyLimitProperties.getRetryAfter()
+                    ));
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            filterChain.doFilter(request, response);
+            dropped = response.getStatus() >= 500;
+        } finally {
+            this.adaptiveConcurrencyLimiter.release(System.nanoTime() - start, dropped);
+        }
+    }
+
+    private boolean isRead(HttpServletRequest request) {
+        String method = request.getMethod();
+        return HttpMethod.GET.matches(method)
+                || HttpMethod.HEAD.matches(method)
+                || this.concurrencyLimitProperties.getReadPaths().contains(request.getRequestURI());
+    }
+}
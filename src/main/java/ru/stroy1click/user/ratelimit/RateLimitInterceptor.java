@@ -0,0 +1,58 @@
+package ru.stroy1click.user.ratelimit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.MessageSource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ru.stroy1click.user.exception.RateLimitExceededException;
+import ru.stroy1click.user.properties.RateLimitProperties;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Проверяет лимит клиента до вызова эндпоинта. Эндпоинт - имя метода контроллера,
+ * клиент - заголовок rate-limit.client-header, если запрос пришёл от rate-limit.trusted-proxies, иначе адрес.
+ */
+@Component
+@RequiredArgsConstructor
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final ClientRateLimiter clientRateLimiter;
+
+    private final RateLimitProperties rateLimitProperties;
+
+    private final MessageSource messageSource;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if(!this.rateLimitProperties.isEnabled() || !(handler instanceof HandlerMethod handlerMethod)) return true;
+
+        RateLimited rateLimited = handlerMethod.getMethodAnnotation(RateLimited.class);
+        Duration retryAfter = this.clientRateLimiter.tryAcquire(
+                resolveClient(request),
+                handlerMethod.getMethod().getName(),
+                rateLimited == null ? 1 : rateLimited.cost()
+        );
+        if(retryAfter != null) throw new RateLimitExceededException(
+                this.messageSource.getMessage(
+                        "error.details.too_many_requests",
+                        null,
+                        Locale.getDefault()
+                ),
+                retryAfter
+        );
+        return true;
+    }
+
+    private String resolveClient(HttpServletRequest request) {
+        String remoteAddr = request.getRemoteAddr();
+        if(!this.rateLimitProperties.getTrustedProxies().contains(remoteAddr)) return remoteAddr;
+
+        String client = request.getHeader(this.rateLimitProperties.getClientHeader());
+        return client == null || client.isBlank() ? remoteAddr : client;
+    }
+}
@@ -0,0 +1,16 @@
+package ru.stroy1click.user.ratelimit;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Стоимость вызова эндпоинта в бакете клиента. Эндпоинты без аннотации стоят 1.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimited {
+
+    int cost();
+}
@@ -0,0 +1,44 @@
+package ru.stroy1click.user.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket на одном {@link AtomicLong} (GCRA): вместо числа токенов хранится момент, к которому
+ * бакет снова был бы полон. Взятие токенов - один CAS, без блокировок и аллокаций.
+ */
+public class TokenBucket {
+
+    private final long nanosPerToken;
+
+    private final long capacityNanos;
+
+    private final AtomicLong fullAt;
+
+    /**
+     * @param ratePerSecond пополнение в токенах в секунду
+     * @param capacity      ёмкость: сколько токенов можно потратить разом после простоя
+     */
+    public TokenBucket(double ratePerSecond, long capacity, long now) {
+        if(ratePerSecond <= 0 || capacity <= 0) throw new IllegalArgumentException("Token bucket rate and capacity must be positive");
+        this.nanosPerToken = Math.max(1, (long) (1_000_000_000L / ratePerSecond));
+        this.capacityNanos = capacity * this.nanosPerToken;
+        //бакет создаётся полным
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * @param now {@link System#nanoTime()}
+     * @return 0, если токены взяты, иначе через сколько наносекунд их станет достаточно
+     */
+    public long tryAcquire(int cost, long now) {
+        long increment = cost * this.nanosPerToken;
+        while (true){
+            long current = this.fullAt.get();
+            long next = Math.max(current, now) + increment;
+            long waitNanos = next - now - this.capacityNanos;
+            //стоимость больше ёмкости не пройдёт никогда: ждать бесполезно, но и ответ честный
+            if(waitNanos > 0) return waitNanos;
+            if(this.fullAt.compareAndSet(current, next)) return 0;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ru.stroy1click.user.repository;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ru.stroy1click.user.entity.UserEvent;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface UserEventRepository extends JpaRepository<UserEvent, Long> {
+
+    List<UserEvent> findByStreamPositionGreaterThanOrderByStreamPosition(Long after, Limit limit);
+
+    //один relay на кластер: блокировка снимается вместе с транзакцией
+    @Query(value = "select pg_try_advisory_xact_lock(:key)", nativeQuery = true)
+    boolean tryLockRelay(@Param("key") long key);
+
+    @Query(value = "select * from account.user_events where stream_position is null order by id limit :limit", nativeQuery = true)
+    List<UserEvent> findUnpublished(@Param("limit") int limit);
+
+    @Query(value = "select coalesce(max(stream_position), 0) from account.user_events", nativeQuery = true)
+    long findLastPosition();
+
+    //последнее опубликованное событие не удаляется: от него findLastPosition продолжает нумерацию
+    @Modifying
+    @Query(value = """
+            delete from account.user_events where id in (
+                select id from account.user_events
+                where published_at < :before
+                  and stream_position < (select max(stream_position) from account.user_events)
+                order by published_at
+                limit :limit
+            )
+            """, nativeQuery = true)
+    int deletePublishedBefore(@Param("before") Instant before, @Param("limit") int limit);
+}
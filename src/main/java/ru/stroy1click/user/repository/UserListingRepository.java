@@ -0,0 +1,21 @@
+package ru.stroy1click.user.repository;
+
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.model.Role;
+
+import java.util.List;
+
+public interface UserListingRepository {
+
+    /**
+     * Страница пользователей с id больше {@code afterId} по возрастанию id.
+     * Фильтры со значением null в запрос не попадают.
+     */
+    List<UserSummaryDto> findPage(Long afterId, Role role, Boolean emailConfirmed, int limit);
+
+    /**
+     * Поиск по началу или подстроке имени, фамилии и email без учёта регистра.
+     * Совпадения по началу строки идут первыми, затем по убыванию триграммного сходства.
+     */
+    List<UserSummaryDto> search(String query, int limit);
+}
@@ -1,15 +1,90 @@
 package ru.stroy1click.user.repository;
 
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.dto.UserVersion;
 import ru.stroy1click.user.entity.User;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserListingRepository {
+
+    //чтения по ключу сразу в DTO: без сущности в persistence context, снимка для dirty checking и маппера.
+    //password остаётся: значение кэша отдаёт и getByEmail, по которому проверяют пароль
+    String DTO_SELECT = """
+            select new ru.stroy1click.user.dto.UserDto(u.id, u.firstName, u.lastName, u.email, u.password,
+                u.emailConfirmed, u.role, u.version)
+            from User u""";
+
+    String FIND_DTO_BY_ID = DTO_SELECT + " where u.id = :id";
+
+    String FIND_DTO_BY_EMAIL = DTO_SELECT + " where u.email = :email";
 
-    Optional<User> findByEmail(String email);
+    @Query(FIND_DTO_BY_ID)
+    Optional<UserDto> findDtoById(@Param("id") Long id);
+
+    @Query(FIND_DTO_BY_EMAIL)
+    Optional<UserDto> findDtoByEmail(@Param("email") String email);
+
+    @Query(DTO_SELECT + " where u.id in :ids or u.email in :emails")
+    List<UserDto> findAllDtoByIdInOrEmailIn(@Param("ids") Collection<Long> ids, @Param("emails") Collection<String> emails);
 
     Boolean existsUserByEmail(String email);
+
+    //записи одной командой, без загрузки сущности; пустой результат - пользователя нет.
+    //каждая увеличивает version: новая версия нужна для инвалидации кэша после коммита
+
+    @Query(value = """
+            update account.users set first_name = :firstName, last_name = :lastName, version = version + 1
+            where id = :id returning version""", nativeQuery = true)
+    Optional<Long> updateNameReturningVersion(@Param("id") Long id, @Param("firstName") String firstName,
+                                              @Param("lastName") String lastName);
+
+    //условная запись по If-Match: пусто, если пользователя нет или его версия уже другая
+    @Query(value = """
+            update account.users set first_name = :firstName, last_name = :lastName, version = version + 1
+            where id = :id and version in (:versions) returning version""", nativeQuery = true)
+    Optional<Long> updateNameIfVersionReturningVersion(@Param("id") Long id, @Param("firstName") String firstName,
+                                                       @Param("lastName") String lastName,
+                                                       @Param("versions") Collection<Long> versions);
+
+    @Query(value = "delete from account.users where id = :id returning email", nativeQuery = true)
+    Optional<String> deleteByIdReturningEmail(@Param("id") Long id);
+
+    @Query(value = """
+            update account.users set email_confirmed = true, version = version + 1
+            where email = :email returning id, version""", nativeQuery = true)
+    Optional<UserVersion> confirmEmailReturningVersion(@Param("email") String email);
+
+    @Query(value = """
+            update account.users set password = :password, version = version + 1
+            where email = :email returning id, version""", nativeQuery = true)
+    Optional<UserVersion> updatePasswordReturningVersion(@Param("email") String email, @Param("password") String password);
+
+    @Query("select u.email from User u where u.email in :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    @Query("select u.email from User u")
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    Stream<String> streamAllEmails();
+
+    //DTO-проекция без password: строки не попадают в persistence context, память не растёт с размером выгрузки
+    @Query("""
+            select new ru.stroy1click.user.dto.UserSummaryDto(u.id, u.firstName, u.lastName, u.email, u.emailConfirmed, u.role)
+            from User u where u.id > :afterId order by u.id""")
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    Stream<UserSummaryDto> streamAllAfter(@Param("afterId") Long afterId);
 }
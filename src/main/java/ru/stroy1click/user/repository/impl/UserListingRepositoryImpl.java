@@ -0,0 +1,105 @@
+package ru.stroy1click.user.repository.impl;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import lombok.RequiredArgsConstructor;
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.model.Role;
+import ru.stroy1click.user.repository.UserListingRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
+@RequiredArgsConstructor
+public class UserListingRepositoryImpl implements UserListingRepository {
+
+    //запросы короче триграммы ищем только по началу строки: подстроку из 1-2 символов индекс pg_trgm не отсекает
+    public static final int MIN_SUBSTRING_LENGTH = 3;
+
+    //параметры: prefix x3, query x3, limit. Сортировка не по id, иначе планировщик
+    //выбирает обход первичного ключа с фильтром, который для редкого префикса читает всю таблицу
+    public static final String PREFIX_SEARCH_SQL = """
+            select id, first_name, last_name, email, email_confirmed, role
+            from account.users
+            where lower(first_name) like ? or lower(last_name) like ? or lower(email) like ?
+            order by greatest(similarity(lower(first_name), ?), similarity(lower(last_name), ?), similarity(lower(email), ?)) desc,
+                     id
+            limit ?""";
+
+    //параметры: pattern x3, prefix x3, query x3, limit
+    public static final String SUBSTRING_SEARCH_SQL = """
+            select id, first_name, last_name, email, email_confirmed, role
+            from account.users
+            where lower(first_name) like ? or lower(last_name) like ? or lower(email) like ?
+            order by (lower(first_name) like ? or lower(last_name) like ? or lower(email) like ?) desc,
+                     greatest(similarity(lower(first_name), ?), similarity(lower(last_name), ?), similarity(lower(email), ?)) desc,
+                     id
+            limit ?""";
+
+    private final EntityManager entityManager;
+
+    @Override
+    public List<UserSummaryDto> findPage(Long afterId, Role role, Boolean emailConfirmed, int limit) {
+        //условия добавляются только для заданных фильтров, без "(:role is null or ...)",
+        //иначе планировщик не может выбрать индекс (role, email_confirmed, id)
+        StringBuilder jpql = new StringBuilder("""
+                select new ru.stroy1click.user.dto.UserSummaryDto(u.id, u.firstName, u.lastName, u.email, u.emailConfirmed, u.role)
+                from User u where u.id > :afterId""");
+        if(role != null) jpql.append(" and u.role = :role");
+        if(emailConfirmed != null) jpql.append(" and u.emailConfirmed = :emailConfirmed");
+        jpql.append(" order by u.id");
+
+        TypedQuery<UserSummaryDto> query = this.entityManager.createQuery(jpql.toString(), UserSummaryDto.class)
+                .setParameter("afterId", afterId == null ? 0L : afterId)
+                .setHint(HINT_READ_ONLY, true)
+                .setMaxResults(limit);
+        if(role != null) query.setParameter("role", role);
+        if(emailConfirmed != null) query.setParameter("emailConfirmed", emailConfirmed);
+        return query.getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<UserSummaryDto> search(String query, int limit) {
+        String normalized = query.trim().toLowerCase(Locale.ROOT);
+        String prefix = escapeLike(normalized) + "%";
+
+        Query nativeQuery;
+        if(normalized.length() < MIN_SUBSTRING_LENGTH){
+            nativeQuery = this.entityManager.createNativeQuery(PREFIX_SEARCH_SQL);
+            bind(nativeQuery, prefix, prefix, prefix, normalized, normalized, normalized, limit);
+        } else {
+            String pattern = "%" + prefix;
+            nativeQuery = this.entityManager.createNativeQuery(SUBSTRING_SEARCH_SQL);
+            bind(nativeQuery, pattern, pattern, pattern, prefix, prefix, prefix, normalized, normalized, normalized, limit);
+        }
+
+        List<Object[]> rows = nativeQuery.getResultList();
+        List<UserSummaryDto> users = new ArrayList<>(rows.size());
+        for(Object[] row : rows){
+            users.add(new UserSummaryDto(
+                    ((Number) row[0]).longValue(),
+                    (String) row[1],
+                    (String) row[2],
+                    (String) row[3],
+                    (Boolean) row[4],
+                    Role.valueOf((String) row[5])
+            ));
+        }
+        return users;
+    }
+
+    private static void bind(Query query, Object... values){
+        for(int i = 0; i < values.length; i++){
+            query.setParameter(i + 1, values[i]);
+        }
+    }
+
+    private static String escapeLike(String value){
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,10 @@
+package ru.stroy1click.user.service;
+
+import java.util.List;
+
+public interface PasswordHashService {
+
+    String encode(String rawPassword);
+
+    List<String> encodeAll(List<String> rawPasswords);
+}
@@ -0,0 +1,20 @@
+package ru.stroy1click.user.service;
+
+import ru.stroy1click.user.dto.UserEventPage;
+import ru.stroy1click.user.model.UserEventType;
+
+import java.util.Map;
+
+public interface UserEventService {
+
+    /**
+     * Пишет событие в outbox в текущей транзакции.
+     *
+     * @param payload изменённые поля или null
+     */
+    void record(UserEventType type, Long userId, Object payload);
+
+    void recordAll(UserEventType type, Map<Long, ?> payloadByUserId);
+
+    UserEventPage getEvents(long after, int limit);
+}
@@ -0,0 +1,15 @@
+package ru.stroy1click.user.service;
+
+import ru.stroy1click.user.model.UserDataFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface UserExportService {
+
+    /**
+     * Пишет в {@code output} всех пользователей с id больше {@code afterId} в порядке возрастания id.
+     * Для продолжения прерванной выгрузки передаётся последний полученный id.
+     */
+    void export(Long afterId, UserDataFormat format, OutputStream output) throws IOException;
+}
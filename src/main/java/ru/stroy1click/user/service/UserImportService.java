@@ -0,0 +1,16 @@
+package ru.stroy1click.user.service;
+
+import ru.stroy1click.user.model.UserDataFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface UserImportService {
+
+    /**
+     * Читает пользователей из {@code input} построчно и пишет в {@code output} по одной NDJSON-строке
+     * с результатом на каждую входную строку.
+     */
+    void importUsers(InputStream input, UserDataFormat format, OutputStream output) throws IOException;
+}
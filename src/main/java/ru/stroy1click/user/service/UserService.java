@@ -2,6 +2,11 @@ package ru.stroy1click.user.service;
 
 
 import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.dto.UserSummaryPage;
+import ru.stroy1click.user.model.Role;
+
+import java.util.List;
 
 public interface UserService {
 
@@ -11,10 +16,22 @@ public interface UserService {
 
     void update(Long id, UserDto userDto);
 
+    /**
+     * @param expectedVersions версии из If-Match, null - любая
+     * @return новая версия
+     */
+    Long update(Long id, UserDto userDto, List<Long> expectedVersions);
+
     void delete(Long id);
 
     UserDto getByEmail(String email);
 
+    List<UserDto> getAll(List<Long> ids, List<String> emails);
+
+    UserSummaryPage getPage(Long afterId, Role role, Boolean emailConfirmed, int limit);
+
+    List<UserSummaryDto> search(String query, int limit);
+
     Boolean existsUserByEmail(String email);
 
     void updateEmailConfirmedStatus(String email);
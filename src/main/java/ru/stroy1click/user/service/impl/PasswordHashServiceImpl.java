@@ -0,0 +1,156 @@
+package ru.stroy1click.user.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.MessageSource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import ru.stroy1click.user.exception.ServiceOverloadedException;
+import ru.stroy1click.user.properties.HashingProperties;
+import ru.stroy1click.user.service.PasswordHashService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+
+/**
+ * Хэширование паролей на отдельном ограниченном пуле, чтобы bcrypt не занимал потоки Tomcat без ограничений.
+ * При переполнении очереди запрос сразу отклоняется с 503.
+ */
+@Slf4j
+@Service
+public class PasswordHashServiceImpl implements PasswordHashService {
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final MessageSource messageSource;
+
+    private final HashingProperties hashingProperties;
+
+    private final ThreadPoolExecutor executor;
+
+    private final int threads;
+
+    private final Timer hashTimer;
+
+    private final Timer queueWaitTimer;
+
+    private final Counter rejectedCounter;
+
+    public PasswordHashServiceImpl(PasswordEncoder passwordEncoder,
+                                   MessageSource messageSource,
+                                   HashingProperties hashingProperties,
+                                   MeterRegistry meterRegistry) {
+        this.passwordEncoder = passwordEncoder;
+        this.messageSource = messageSource;
+        this.hashingProperties = hashingProperties;
+
+        this.threads = hashingProperties.getThreads() > 0
+                ? hashingProperties.getThreads()
+                : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(
+                this.threads, this.threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(hashingProperties.getQueueCapacity()),
+                new CustomizableThreadFactory("password-hash-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        this.hashTimer = Timer.builder("password.hash.duration")
+                .description("Time spent hashing a password, excluding queue wait")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.queueWaitTimer = Timer.builder("password.hash.queue.wait")
+                .description("Time a hash request waited for a worker")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("password.hash.rejected")
+                .description("Hash requests rejected because the queue was full or the wait timed out")
+                .register(meterRegistry);
+        Gauge.builder("password.hash.queue.size", this.executor, executor -> executor.getQueue().size())
+                .description("Hash requests waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("password.hash.active", this.executor, ThreadPoolExecutor::getActiveCount)
+                .description("Hash requests being processed")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(String rawPassword) {
+        return await(submit(rawPassword));
+    }
+
+    @Override
+    public List<String> encodeAll(List<String> rawPasswords) {
+        //не больше threads задач от одного вызова одновременно, чтобы импорт не вытеснял регистрации
+        List<Future<String>> futures = new ArrayList<>(rawPasswords.size());
+        List<String> encoded = new ArrayList<>(rawPasswords.size());
+        try {
+            for(String rawPassword : rawPasswords){
+                if(futures.size() - encoded.size() >= this.threads){
+                    encoded.add(await(futures.get(encoded.size())));
+                }
+                futures.add(submit(rawPassword));
+            }
+            while (encoded.size() < futures.size()){
+                encoded.add(await(futures.get(encoded.size())));
+            }
+        } catch (RuntimeException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+        return encoded;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    private Future<String> submit(String rawPassword) {
+        try {
+            long submitted = System.nanoTime();
+            return this.executor.submit(() -> {
+                this.queueWaitTimer.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                return this.hashTimer.recordCallable(() -> this.passwordEncoder.encode(rawPassword));
+            });
+        } catch (RejectedExecutionException e) {
+            throw overloaded();
+        }
+    }
+
+    private String await(Future<String> future) {
+        try {
+            return future.get(this.hashingProperties.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw overloaded();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private ServiceOverloadedException overloaded() {
+        this.rejectedCounter.increment();
+        log.warn("Password hashing is saturated, queue size {}", this.executor.getQueue().size());
+        return new ServiceOverloadedException(
+                this.messageSource.getMessage(
+                        "error.details.hashing_overloaded",
+                        null,
+                        Locale.getDefault()
+                ),
+                this.hashingProperties.getRetryAfter()
+        );
+    }
+}
@@ -0,0 +1,75 @@
+package ru.stroy1click.user.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.stroy1click.user.dto.UserEventDto;
+import ru.stroy1click.user.dto.UserEventPage;
+import ru.stroy1click.user.entity.UserEvent;
+import ru.stroy1click.user.mapper.UserEventMapper;
+import ru.stroy1click.user.model.UserEventType;
+import ru.stroy1click.user.repository.UserEventRepository;
+import ru.stroy1click.user.service.UserEventService;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@Transactional(readOnly = true)
+public class UserEventServiceImpl implements UserEventService {
+
+    private final UserEventRepository userEventRepository;
+
+    private final UserEventMapper userEventMapper;
+
+    private final ObjectWriter payloadWriter;
+
+    public UserEventServiceImpl(UserEventRepository userEventRepository, UserEventMapper userEventMapper,
+                                ObjectMapper objectMapper) {
+        this.userEventRepository = userEventRepository;
+        this.userEventMapper = userEventMapper;
+        this.payloadWriter = objectMapper.writer();
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY) //событие без изменения в той же транзакции не имеет смысла
+    public void record(UserEventType type, Long userId, Object payload) {
+        this.userEventRepository.save(toEvent(type, userId, payload, Instant.now()));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordAll(UserEventType type, Map<Long, ?> payloadByUserId) {
+        Instant now = Instant.now();
+        List<UserEvent> events = new ArrayList<>(payloadByUserId.size());
+        payloadByUserId.forEach((userId, payload) -> events.add(toEvent(type, userId, payload, now)));
+        this.userEventRepository.saveAll(events);
+    }
+
+    @Override
+    public UserEventPage getEvents(long after, int limit) {
+        List<UserEventDto> events = this.userEventMapper.toDto(
+                this.userEventRepository.findByStreamPositionGreaterThanOrderByStreamPosition(after, Limit.of(limit))
+        );
+        return new UserEventPage(events, events.isEmpty() ? after : events.getLast().position());
+    }
+
+    private UserEvent toEvent(UserEventType type, Long userId, Object payload, Instant createdAt) {
+        try {
+            return UserEvent.builder()
+                    .userId(userId)
+                    .type(type)
+                    .payload(payload == null ? null : this.payloadWriter.writeValueAsString(payload))
+                    .createdAt(createdAt)
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize %s event payload".formatted(type), e);
+        }
+    }
+}
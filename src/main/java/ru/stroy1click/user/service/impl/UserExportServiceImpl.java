@@ -0,0 +1,72 @@
+package ru.stroy1click.user.service.impl;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.model.UserDataFormat;
+import ru.stroy1click.user.repository.UserRepository;
+import ru.stroy1click.user.service.UserExportService;
+import ru.stroy1click.user.util.CsvUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserExportServiceImpl implements UserExportService {
+
+    private static final String CSV_HEADER = CsvUtils.toLine(Arrays.asList(
+            "id", "firstName", "lastName", "email", "emailConfirmed", "role"
+    ));
+
+    private final UserRepository userRepository;
+
+    private final ObjectMapper objectMapper;
+
+    @Override
+    @Transactional(readOnly = true) //курсор PostgreSQL работает только внутри транзакции
+    public void export(Long afterId, UserDataFormat format, OutputStream output) throws IOException {
+        long start = System.currentTimeMillis();
+        long count = 0;
+        try(Stream<UserSummaryDto> users = this.userRepository.streamAllAfter(afterId == null ? 0L : afterId)){
+            Iterator<UserSummaryDto> iterator = users.iterator();
+            if(format == UserDataFormat.CSV){
+                Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+                while (iterator.hasNext()){
+                    UserSummaryDto user = iterator.next();
+                    writer.write(CsvUtils.toLine(Arrays.asList(
+                            user.id(), user.firstName(), user.lastName(), user.email(), user.emailConfirmed(), user.role()
+                    )));
+                    writer.write('\n');
+                    count++;
+                }
+                writer.flush();
+            } else {
+                ObjectWriter writer = this.objectMapper.writerFor(UserSummaryDto.class)
+                        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+                JsonGenerator generator = this.objectMapper.getFactory().createGenerator(output);
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                while (iterator.hasNext()){
+                    writer.writeValue(generator, iterator.next());
+                    generator.writeRaw('\n');
+                    count++;
+                }
+                generator.flush();
+            }
+        }
+        log.info("export finished, {} users written in {} ms", count, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,364 @@
+package ru.stroy1click.user.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.context.MessageSource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.stroy1click.user.cache.CacheBatchOperations;
+import ru.stroy1click.user.cache.EmailBloomFilter;
+import ru.stroy1click.user.cache.UserCache;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.entity.User;
+import ru.stroy1click.user.exception.ServiceOverloadedException;
+import ru.stroy1click.user.exception.ValidationException;
+import ru.stroy1click.user.mapper.UserMapper;
+import ru.stroy1click.user.model.UserDataFormat;
+import ru.stroy1click.user.model.Role;
+import ru.stroy1click.user.model.UserEventType;
+import ru.stroy1click.user.model.UserImportResult;
+import ru.stroy1click.user.properties.ImportProperties;
+import ru.stroy1click.user.repository.UserRepository;
+import ru.stroy1click.user.service.PasswordHashService;
+import ru.stroy1click.user.service.UserEventService;
+import ru.stroy1click.user.service.UserImportService;
+import ru.stroy1click.user.util.CsvUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+public class UserImportServiceImpl implements UserImportService {
+
+    private static final List<String> CSV_COLUMNS = List.of(
+            "firstName", "lastName", "email", "password", "emailConfirmed", "role"
+    );
+
+    private final UserRepository userRepository;
+
+    private final UserMapper userMapper;
+
+    private final CacheBatchOperations cacheBatchOperations;
+
+    private final EmailBloomFilter emailBloomFilter;
+
+    private final PasswordHashService passwordHashService;
+
+    private final UserEventService userEventService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final EntityManager entityManager;
+
+    private final Validator validator;
+
+    private final MessageSource messageSource;
+
+    private final ImportProperties importProperties;
+
+    private final ObjectReader userReader;
+
+    private final ObjectWriter resultWriter;
+
+    public UserImportServiceImpl(UserRepository userRepository, UserMapper userMapper,
+                                 CacheBatchOperations cacheBatchOperations, EmailBloomFilter emailBloomFilter,
+                                 PasswordHashService passwordHashService, UserEventService userEventService,
+                                 TransactionTemplate transactionTemplate, EntityManager entityManager,
+                                 Validator validator, MessageSource messageSource,
+                                 ImportProperties importProperties, ObjectMapper objectMapper) {
+        this.userRepository = userRepository;
+        this.userMapper = userMapper;
+        this.cacheBatchOperations = cacheBatchOperations;
+        this.emailBloomFilter = emailBloomFilter;
+        this.passwordHashService = passwordHashService;
+        this.userEventService = userEventService;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManager = entityManager;
+        this.validator = validator;
+        this.messageSource = messageSource;
+        this.importProperties = importProperties;
+        this.userReader = objectMapper.readerFor(UserDto.class);
+        this.resultWriter = objectMapper.writerFor(UserImportResult.class);
+    }
+
+    @Override
+    public void importUsers(InputStream input, UserDataFormat format, OutputStream output) throws IOException {
+        BoundedLineReader reader = new BoundedLineReader(
+                new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)),
+                this.importProperties.getMaxLineLength()
+        );
+        int batchSize = this.importProperties.getBatchSize();
+        List<Row> chunk = new ArrayList<>(batchSize);
+        Map<String, Integer> columns = null;
+        long lineNumber = 0;
+        long created = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null){
+            lineNumber++;
+            if(line.isBlank() && !reader.isTooLong()) continue;
+
+            if(format == UserDataFormat.CSV && columns == null){
+                if(reader.isTooLong()) throw new ValidationException(lineTooLong());
+                columns = parseHeader(line);
+                continue;
+            }
+
+            Row row = new Row(lineNumber);
+            if(reader.isTooLong()){
+                row.error = lineTooLong();
+            } else {
+                try {
+                    row.user = format == UserDataFormat.CSV ? parseCsv(line, columns) : this.userReader.readValue(line);
+                } catch (JsonProcessingException | IllegalArgumentException e) {
+                    row.error = e instanceof JsonProcessingException jsonException
+                            ? jsonException.getOriginalMessage()
+                            : e.getMessage();
+                }
+            }
+            chunk.add(row);
+
+            if(chunk.size() >= batchSize){
+                created += importChunk(chunk, output);
+                chunk.clear();
+            }
+        }
+        if(!chunk.isEmpty()){
+            created += importChunk(chunk, output);
+        }
+        output.flush();
+        log.info("import finished, {} lines read, {} users created", lineNumber, created);
+    }
+
+    private long importChunk(List<Row> chunk, OutputStream output) throws IOException {
+        List<Row> accepted = validate(chunk);
+        if(!accepted.isEmpty()){
+            try {
+                List<String> hashes = this.passwordHashService.encodeAll(
+                        accepted.stream().map(row -> row.user.getPassword()).toList()
+                );
+                for(int i = 0; i < accepted.size(); i++){
+                    accepted.get(i).user.setPassword(hashes.get(i));
+                }
+                save(accepted);
+                evictNotFound(accepted);
+            } catch (ServiceOverloadedException e) {
+                accepted.forEach(row -> row.error = e.getMessage());
+            }
+        }
+
+        long created = 0;
+        for(Row row : chunk){
+            UserImportResult result = row.error == null
+                    ? UserImportResult.created(row.line, row.id)
+                    : UserImportResult.failed(row.line, row.error);
+            if(row.error == null) created++;
+            this.resultWriter.writeValue(output, result);
+            output.write('\n');
+        }
+        //отдаём клиенту результат по каждому пакету, не дожидаясь конца файла
+        output.flush();
+        return created;
+    }
+
+    private List<Row> validate(List<Row> chunk){
+        List<Row> accepted = new ArrayList<>(chunk.size());
+        Set<String> emails = new HashSet<>();
+        for(Row row : chunk){
+            if(row.error != null) continue;
+
+            Set<ConstraintViolation<UserDto>> violations = this.validator.validate(row.user);
+            if(!violations.isEmpty()){
+                row.error = violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .collect(Collectors.joining(", "));
+            } else if(!emails.add(row.user.getEmail())){
+                row.error = alreadyExists(row.user.getEmail());
+            } else {
+                row.user.setId(null);
+                accepted.add(row);
+            }
+        }
+
+        //в базу идём только за теми email, которые могут уже существовать
+        List<String> candidates = accepted.stream()
+                .map(row -> row.user.getEmail())
+                .filter(this.emailBloomFilter::mightContain)
+                .toList();
+        if(candidates.isEmpty()) return accepted;
+
+        Set<String> existing = new HashSet<>(this.userRepository.findExistingEmails(candidates));
+        accepted.removeIf(row -> {
+            if(!existing.contains(row.user.getEmail())) return false;
+            row.error = alreadyExists(row.user.getEmail());
+            return true;
+        });
+        return accepted;
+    }
+
+    private void save(List<Row> rows){
+        try {
+            this.transactionTemplate.executeWithoutResult(status -> insert(rows));
+        } catch (DataIntegrityViolationException e) {
+            //email заняли параллельно, откатился весь пакет: повторяем по одной строке, чтобы найти виновника
+            log.warn("import batch of {} rows rolled back, retrying row by row", rows.size());
+            for(Row row : rows){
+                try {
+                    this.transactionTemplate.executeWithoutResult(status -> insert(List.of(row)));
+                } catch (DataIntegrityViolationException rowException) {
+                    row.id = null;
+                    row.error = alreadyExists(row.user.getEmail());
+                }
+            }
+        }
+    }
+
+    //созданные id и email могли попасть в кэш как отсутствующие
+    private void evictNotFound(List<Row> rows){
+        List<Row> created = rows.stream().filter(row -> row.error == null).toList();
+        this.cacheBatchOperations.multiEvict(Map.of(
+                UserCache.USER, created.stream().map(row -> row.id).toList(),
+                UserCache.EMAIL, created.stream().map(row -> row.user.getEmail()).toList()
+        ));
+    }
+
+    private void insert(List<Row> rows){
+        this.entityManager.unwrap(Session.class).setJdbcBatchSize(this.importProperties.getBatchSize());
+
+        List<User> users = rows.stream().map(row -> this.userMapper.toEntity(row.user)).toList();
+        this.userRepository.saveAll(users);
+        //id уже выданы последовательностью: события уходят в том же flush
+        Map<Long, UserSummaryDto> created = new LinkedHashMap<>();
+        users.forEach(user -> created.put(user.getId(), new UserSummaryDto(user.getId(), user.getFirstName(),
+                user.getLastName(), user.getEmail(), user.getEmailConfirmed(), user.getRole())));
+        this.userEventService.recordAll(UserEventType.CREATED, created);
+        //flush через репозиторий: нарушение unique переводится в DataIntegrityViolationException, см. save
+        this.userRepository.flush();
+        this.entityManager.clear();
+
+        for(int i = 0; i < rows.size(); i++){
+            rows.get(i).id = users.get(i).getId();
+        }
+        //одной рассылкой на пакет, а не по сообщению на строку
+        this.emailBloomFilter.putAll(users.stream().map(User::getEmail).toList());
+    }
+
+    private Map<String, Integer> parseHeader(String line){
+        List<String> header = CsvUtils.parseLine(line);
+        Map<String, Integer> columns = new HashMap<>();
+        for(int i = 0; i < header.size(); i++){
+            columns.put(header.get(i).trim(), i);
+        }
+        if(!columns.keySet().containsAll(CSV_COLUMNS)){
+            throw new ValidationException("CSV header must contain columns " + CSV_COLUMNS);
+        }
+        return columns;
+    }
+
+    private UserDto parseCsv(String line, Map<String, Integer> columns){
+        List<String> values = CsvUtils.parseLine(line);
+        if(values.size() < columns.size()){
+            throw new IllegalArgumentException("Expected %d columns, got %d".formatted(columns.size(), values.size()));
+        }
+
+        String emailConfirmed = values.get(columns.get("emailConfirmed")).trim();
+        String role = values.get(columns.get("role")).trim();
+        return UserDto.builder()
+                .firstName(values.get(columns.get("firstName")))
+                .lastName(values.get(columns.get("lastName")))
+                .email(values.get(columns.get("email")))
+                .password(values.get(columns.get("password")))
+                .emailConfirmed(emailConfirmed.isEmpty() ? null : parseBoolean("emailConfirmed", emailConfirmed))
+                .role(role.isEmpty() ? null : Role.valueOf(role))
+                .build();
+    }
+
+    //Boolean.parseBoolean молча превращает "yes" или "1" в false
+    private static Boolean parseBoolean(String column, String value){
+        if(value.equalsIgnoreCase("true")) return true;
+        if(value.equalsIgnoreCase("false")) return false;
+        throw new IllegalArgumentException("%s must be true or false, got '%s'".formatted(column, value));
+    }
+
+    private String lineTooLong(){
+        return "Line is longer than %d characters".formatted(this.importProperties.getMaxLineLength());
+    }
+
+    private String alreadyExists(String email){
+        return this.messageSource.getMessage(
+                "error.details.already_exist",
+                new Object[]{email},
+                Locale.getDefault()
+        );
+    }
+
+    /**
+     * Чтение по строкам с ограничением длины: у BufferedReader.readLine его нет, и загрузка
+     * без переводов строк целиком собиралась бы в одну строку. Хвост длинной строки пропускается.
+     */
+    private static class BoundedLineReader {
+
+        private final Reader reader;
+
+        private final int maxLength;
+
+        private final StringBuilder line = new StringBuilder();
+
+        private boolean tooLong;
+
+        private BoundedLineReader(Reader reader, int maxLength) {
+            this.reader = reader;
+            this.maxLength = maxLength;
+        }
+
+        private String readLine() throws IOException {
+            this.line.setLength(0);
+            this.tooLong = false;
+            int c;
+            while ((c = this.reader.read()) != -1 && c != '\n'){
+                if(this.line.length() < this.maxLength){
+                    this.line.append((char) c);
+                } else if(c != '\r'){
+                    this.tooLong = true;
+                }
+            }
+            if(c == -1 && this.line.isEmpty()) return null;
+
+            int end = this.line.length();
+            if(end > 0 && this.line.charAt(end - 1) == '\r') this.line.setLength(end - 1);
+            return this.line.toString();
+        }
+
+        //последняя прочитанная строка обрезана
+        private boolean isTooLong() {
+            return this.tooLong;
+        }
+    }
+
+    private static class Row {
+
+        private final long line;
+
+        private UserDto user;
+
+        private Long id;
+
+        private String error;
+
+        private Row(long line) {
+            this.line = line;
+        }
+    }
+}
@@ -3,21 +3,35 @@ package ru.stroy1click.user.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.MessageSource;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.stroy1click.user.cache.CacheBatchOperations;
 import ru.stroy1click.user.cache.CacheClear;
+import ru.stroy1click.user.cache.CacheMarker;
+import ru.stroy1click.user.cache.EmailBloomFilter;
+import ru.stroy1click.user.cache.UserCache;
 import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.dto.UserSummaryPage;
+import ru.stroy1click.user.dto.UserVersion;
 import ru.stroy1click.user.exception.NotFoundException;
+import ru.stroy1click.user.exception.PreconditionFailedException;
 import ru.stroy1click.user.mapper.UserMapper;
 import ru.stroy1click.user.entity.User;
+import ru.stroy1click.user.model.Role;
+import ru.stroy1click.user.model.UserEventType;
 import ru.stroy1click.user.repository.UserRepository;
+import ru.stroy1click.user.service.PasswordHashService;
+import ru.stroy1click.user.service.UserEventService;
 import ru.stroy1click.user.service.UserService;
+import ru.stroy1click.user.util.LogUtils;
 
-import java.util.Locale;
+import java.util.*;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -31,105 +45,206 @@ public class UserServiceImpl implements UserService {
 
     private final CacheClear cacheClear;
 
-    private final PasswordEncoder passwordEncoder;
+    private final CacheBatchOperations cacheBatchOperations;
+
+    private final UserCache userCache;
+
+    private final EmailBloomFilter emailBloomFilter;
+
+    private final PasswordHashService passwordHashService;
+
+    private final UserEventService userEventService;
+
+    private final TransactionTemplate transactionTemplate;
 
     private final MessageSource messageSource;
 
     @Override
-    @Cacheable(value = "user", key = "#id")
+    @Transactional(propagation = Propagation.SUPPORTS) //попадание в кэш не занимает соединение, промах грузит в транзакции репозитория
     public UserDto get(Long id) {
-        log.info("get {}", id);
-        return this.userMapper.toDto(this.userRepository.findById(id).orElseThrow(
-                () -> new NotFoundException(
-                        this.messageSource.getMessage(
-                                "error.user.not_found_id",
-                                new Object[]{id},
-                                Locale.getDefault()
-                        )
-                ))
+        log.atDebug().addKeyValue("id", id).log("get");
+        //одновременные промахи по ключу ждут одну загрузку, отсутствие пользователя тоже кэшируется
+        return this.userCache.getById(
+                id,
+                userId -> this.userRepository.findDtoById(userId),
+                () -> notFoundById(id)
         );
     }
 
     @Override
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) //хэшируем до открытия транзакции и получения соединения
     public UserDto create(UserDto userDto) {
-        log.info("create {}", userDto);
+        log.atInfo().addKeyValue("email", LogUtils.maskEmail(userDto.getEmail())).log("create");
 
-        userDto.setPassword(this.passwordEncoder.encode(userDto.getPassword()));
+        userDto.setPassword(this.passwordHashService.encode(userDto.getPassword()));
 
-        User createdUser = this.userRepository.save(
-                this.userMapper.toEntity(userDto)
-        );
+        UserDto createdUserDto = this.transactionTemplate.execute(status -> {
+            this.emailBloomFilter.put(userDto.getEmail());
+            User createdUser = this.userRepository.save(
+                    this.userMapper.toEntity(userDto)
+            );
+            this.userEventService.record(UserEventType.CREATED, createdUser.getId(), toSummary(createdUser));
 
-        return this.userMapper.toDto(createdUser);
+            return this.userMapper.toDto(createdUser);
+        });
+
+        //убираем закэшированное отсутствие, если этот id или email уже запрашивали
+        this.cacheClear.clearUserById(createdUserDto.getId(), Objects.requireNonNullElse(createdUserDto.getVersion(), 0L));
+        this.cacheClear.clearEmail(createdUserDto.getEmail());
+        return createdUserDto;
     }
 
     @Override
     @Transactional
-    @CacheEvict(value = "user", key = "#id")
     public void update(Long id, UserDto userDto) {
-        log.info("update {}, {}", id, userDto);
-        this.userRepository.findById(id).ifPresentOrElse(user -> {
-            User newUser = User.builder()
-                    .id(user.getId())
-                    .firstName(userDto.getFirstName())
-                    .lastName(userDto.getLastName())
-                    .password(user.getPassword())
-                    .emailConfirmed(user.getEmailConfirmed())
-                    .email(user.getEmail())
-                    .role(user.getRole())
-                    .build();
-            this.userRepository.save(newUser);
-        }, () -> {
-            throw new NotFoundException(
-                    this.messageSource.getMessage(
-                            "error.user.not_found_id",
-                            new Object[]{id},
-                            Locale.getDefault()
-                    )
+        update(id, userDto, null);
+    }
+
+    @Override
+    @Transactional
+    public Long update(Long id, UserDto userDto, List<Long> expectedVersions) {
+        log.atInfo().addKeyValue("id", id).addKeyValue("expectedVersions", expectedVersions).log("update");
+        Optional<Long> updated;
+        if(expectedVersions == null){
+            updated = this.userRepository.updateNameReturningVersion(id, userDto.getFirstName(), userDto.getLastName());
+        } else if(expectedVersions.isEmpty()){
+            //в If-Match нет ни одной версии этого пользователя
+            updated = Optional.empty();
+        } else {
+            updated = this.userRepository.updateNameIfVersionReturningVersion(
+                    id, userDto.getFirstName(), userDto.getLastName(), expectedVersions
             );
-        });
+        }
+        //второй запрос только при отказе: отличить изменённого пользователя от отсутствующего
+        Long version = updated.orElseThrow(() -> expectedVersions != null && this.userRepository.existsById(id)
+                ? preconditionFailed(id)
+                : notFoundById(id));
+        this.userEventService.record(UserEventType.UPDATED, id, Map.of(
+                "firstName", userDto.getFirstName(),
+                "lastName", userDto.getLastName()
+        ));
 
-        this.cacheClear.clearEmail(userDto.getEmail());
+        //кэш очищается после коммита
+        this.cacheClear.clearUserById(id, version);
+        return version;
     }
 
     @Override
     @Transactional
-    @CacheEvict(value = "user", key = "#id")
     public void delete(Long id) {
-        log.info("delete {}", id);
-        User user = this.userRepository.findById(id).orElseThrow(
-                () -> new NotFoundException(
-                        this.messageSource.getMessage(
-                                "error.user.not_found_id",
-                                new Object[]{id},
-                                Locale.getDefault()
-                        )
-                )
-        );
+        log.atInfo().addKeyValue("id", id).log("delete");
+        String email = this.userRepository.deleteByIdReturningEmail(id).orElseThrow(() -> notFoundById(id));
+        this.userEventService.record(UserEventType.DELETED, id, Map.of("email", email));
 
-        this.userRepository.deleteById(id);
-        this.cacheClear.clearEmail(user.getEmail());
+        this.cacheClear.clearUserById(id);
+        //email освобождается и может достаться новому пользователю
+        this.cacheClear.clearEmail(email);
     }
 
     @Override
-    @Cacheable(value = "email", key = "#email")
+    @Transactional(propagation = Propagation.SUPPORTS)
     public UserDto getByEmail(String email) {
-        log.info("getByEmail {}", email);
-        return this.userMapper.toDto(this.userRepository.findByEmail(email).orElseThrow(
-                () -> new NotFoundException(
-                        this.messageSource.getMessage(
-                                "error.user.not_found_email",
-                                new Object[]{email},
-                                Locale.getDefault()
-                        )
-                )
+        log.atDebug().addKeyValue("email", LogUtils.maskEmail(email)).log("getByEmail");
+        return this.userCache.getByEmail(
+                email,
+                () -> this.userRepository.findDtoByEmail(email),
+                id -> this.userRepository.findDtoById(id),
+                () -> notFoundByEmail(email)
+        );
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS) //пакет, найденный в Redis целиком, не занимает соединение
+    public List<UserDto> getAll(List<Long> ids, List<String> emails) {
+        log.atDebug().addKeyValue("ids", ids.size()).addKeyValue("emails", emails.size()).log("getAll");
+        Map<String, Map<Object, Object>> cached = this.cacheBatchOperations.multiGet(Map.of(
+                UserCache.USER, ids,
+                UserCache.EMAIL, emails
         ));
+        //в кэшах могут лежать CacheMarker.NOT_FOUND: такие ключи не грузим и в ответ не включаем
+        Map<Object, Object> cachedById = new HashMap<>(cached.get(UserCache.USER));
+        Map<Object, Object> cachedEmails = cached.get(UserCache.EMAIL);
+        Map<String, Long> idByEmail = new HashMap<>();
+        cachedEmails.forEach((email, id) -> {
+            if(id != CacheMarker.NOT_FOUND) idByEmail.put((String) email, UserCache.toId(id));
+        });
+
+        //второй шаг для email из индекса: пользователи, которых ещё не запрашивали по id
+        List<Long> indexedIds = idByEmail.values().stream()
+                .filter(id -> !cachedById.containsKey(id))
+                .distinct()
+                .toList();
+        if(!indexedIds.isEmpty()){
+            cachedById.putAll(this.cacheBatchOperations.multiGet(Map.of(UserCache.USER, indexedIds)).get(UserCache.USER));
+        }
+
+        List<Long> missingIds = Stream.concat(ids.stream(), indexedIds.stream())
+                .filter(id -> !cachedById.containsKey(id))
+                .distinct()
+                .toList();
+        List<String> missingEmails = emails.stream()
+                .filter(email -> !cachedEmails.containsKey(email))
+                .distinct()
+                .toList();
+
+        Map<Long, UserDto> loadedById = new HashMap<>();
+        if(!missingIds.isEmpty() || !missingEmails.isEmpty()){
+            Map<Object, Object> loadedIdByEmail = new HashMap<>();
+            for(UserDto userDto : this.userRepository.findAllDtoByIdInOrEmailIn(missingIds, missingEmails)){
+                loadedById.put(userDto.getId(), userDto);
+                loadedIdByEmail.put(userDto.getEmail(), userDto.getId());
+                idByEmail.put(userDto.getEmail(), userDto.getId());
+            }
+
+            Map<Object, Object> usersToCache = new HashMap<>(loadedById);
+            missingIds.forEach(id -> usersToCache.putIfAbsent(id, CacheMarker.NOT_FOUND));
+            missingEmails.forEach(email -> loadedIdByEmail.putIfAbsent(email, CacheMarker.NOT_FOUND));
+            this.cacheBatchOperations.multiPut(Map.of(
+                    UserCache.USER, usersToCache,
+                    UserCache.EMAIL, loadedIdByEmail
+            ));
+        }
+
+        Map<Long, UserDto> result = new LinkedHashMap<>();
+        Stream.concat(ids.stream(), emails.stream().map(idByEmail::get))
+                .filter(Objects::nonNull)
+                .forEach(id -> {
+                    if(cachedById.getOrDefault(id, loadedById.get(id)) instanceof UserDto userDto){
+                        result.putIfAbsent(userDto.getId(), userDto);
+                    }
+                });
+        return new ArrayList<>(result.values());
     }
 
     @Override
+    public UserSummaryPage getPage(Long afterId, Role role, Boolean emailConfirmed, int limit) {
+        log.atDebug()
+                .addKeyValue("afterId", afterId)
+                .addKeyValue("role", role)
+                .addKeyValue("emailConfirmed", emailConfirmed)
+                .addKeyValue("limit", limit)
+                .log("getPage");
+        //на одну строку больше, чтобы без count понять, есть ли следующая страница
+        List<UserSummaryDto> users = this.userRepository.findPage(afterId, role, emailConfirmed, limit + 1);
+        if(users.size() <= limit) return new UserSummaryPage(users, null);
+
+        List<UserSummaryDto> page = users.subList(0, limit);
+        return new UserSummaryPage(new ArrayList<>(page), page.get(limit - 1).id());
+    }
+
+    @Override
+    //короткие запросы дорогие (много совпадений) и частые, кэшируем только их; устаревание ограничено TTL кэша
+    @Cacheable(value = "user-search", key = "#query.trim().toLowerCase() + ':' + #limit", condition = "#query.trim().length() < 3")
+    public List<UserSummaryDto> search(String query, int limit) {
+        log.atDebug().addKeyValue("queryLength", query.length()).addKeyValue("limit", limit).log("search");
+        return new ArrayList<>(this.userRepository.search(query, limit));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS) //не занимаем соединение, если фильтр ответил "нет"
     public Boolean existsUserByEmail(String email) {
-        log.info("existsUserByEmail {}", email);
+        log.atDebug().addKeyValue("email", LogUtils.maskEmail(email)).log("existsUserByEmail");
+        if(!this.emailBloomFilter.mightContain(email)) return false;
 
         return this.userRepository.existsUserByEmail(email);
     }
@@ -137,35 +252,59 @@ public class UserServiceImpl implements UserService {
     @Override
     @Transactional
     public void updateEmailConfirmedStatus(String email) {
-        User user = this.userRepository.findByEmail(email)
-                .orElseThrow(() -> new NotFoundException(
-                        this.messageSource.getMessage(
-                                "error.user.not_found_email",
-                                new Object[]{email},
-                                Locale.getDefault()
-                        )
-                ));
-        user.setEmailConfirmed(true);
-
-        this.cacheClear.clearUserById(user.getId());
-        this.cacheClear.clearEmail(email);
+        UserVersion user = this.userRepository.confirmEmailReturningVersion(email).orElseThrow(() -> notFoundByEmail(email));
+        this.userEventService.record(UserEventType.EMAIL_CONFIRMED, user.getId(), null);
+
+        this.cacheClear.clearUserById(user.getId(), user.getVersion());
     }
 
     @Override
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) //хэшируем до открытия транзакции и получения соединения
     public void updatePassword(String email, String newPassword) {
-        User user = this.userRepository.findByEmail(email)
-                .orElseThrow(() -> new NotFoundException(
-                        this.messageSource.getMessage(
-                                "error.user.not_found_email",
-                                new Object[]{email},
-                                Locale.getDefault()
-                        )
-                ));
-        user.setPassword(this.passwordEncoder.encode(newPassword));
-
-        this.cacheClear.clearUserById(user.getId());
-        this.cacheClear.clearEmail(email);
+        String encodedPassword = this.passwordHashService.encode(newPassword);
+
+        this.transactionTemplate.executeWithoutResult(status -> {
+            UserVersion user = this.userRepository.updatePasswordReturningVersion(email, encodedPassword)
+                    .orElseThrow(() -> notFoundByEmail(email));
+            this.userEventService.record(UserEventType.PASSWORD_CHANGED, user.getId(), null);
+
+            this.cacheClear.clearUserById(user.getId(), user.getVersion());
+        });
     }
-}
 
+    //событие не содержит пароль
+    private static UserSummaryDto toSummary(User user){
+        return new UserSummaryDto(user.getId(), user.getFirstName(), user.getLastName(), user.getEmail(),
+                user.getEmailConfirmed(), user.getRole());
+    }
+
+    private NotFoundException notFoundById(Long id){
+        return new NotFoundException(
+                this.messageSource.getMessage(
+                        "error.user.not_found_id",
+                        new Object[]{id},
+                        Locale.getDefault()
+                )
+        );
+    }
+
+    private PreconditionFailedException preconditionFailed(Long id){
+        return new PreconditionFailedException(
+                this.messageSource.getMessage(
+                        "error.details.precondition_failed",
+                        new Object[]{id},
+                        Locale.getDefault()
+                )
+        );
+    }
+
+    private NotFoundException notFoundByEmail(String email){
+        return new NotFoundException(
+                this.messageSource.getMessage(
+                        "error.user.not_found_email",
+                        new Object[]{email},
+                        Locale.getDefault()
+                )
+        );
+    }
+}
@@ -0,0 +1,40 @@
+package ru.stroy1click.user.util;
+
+import java.util.Locale;
+
+public class AcceptEncodingUtils {
+
+    /**
+     * Принимает ли клиент кодировку по заголовку Accept-Encoding. Сравниваются токены целиком,
+     * q=0 означает явный отказ; "*" подходит, только если кодировка не названа отдельно.
+     */
+    public static boolean accepts(String acceptEncoding, String coding){
+        if(acceptEncoding == null || acceptEncoding.isBlank()) return false;
+
+        Boolean wildcard = null;
+        for(String element : acceptEncoding.split(",")){
+            String[] parts = element.split(";");
+            String token = parts[0].trim().toLowerCase(Locale.ROOT);
+            if(!token.equals(coding) && !token.equals("*")) continue;
+
+            boolean accepted = quality(parts) > 0;
+            if(token.equals(coding)) return accepted;
+            wildcard = accepted;
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    private static double quality(String[] parts){
+        for(int i = 1; i < parts.length; i++){
+            String parameter = parts[i].trim();
+            if(parameter.length() < 2 || Character.toLowerCase(parameter.charAt(0)) != 'q' || parameter.charAt(1) != '=') continue;
+            try {
+                return Double.parseDouble(parameter.substring(2).trim());
+            } catch (NumberFormatException e) {
+                //невалидный вес считаем отказом
+                return 0;
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,37 @@
+package ru.stroy1click.user.util;
+
+import org.springframework.http.ETag;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ETagUtils {
+
+    //сильный ETag из id и версии строки: версия растёт при каждой записи, содержимое хешировать не нужно
+    public static String of(Long id, Long version){
+        return "\"" + id + "-" + version + "\"";
+    }
+
+    /**
+     * Версии пользователя из заголовка If-Match. Слабые ETag и ETag других пользователей
+     * не подходят: If-Match сравнивается строго.
+     *
+     * @return null, если заголовка нет или в нём "*"; пустой список, если не подходит ни один ETag
+     */
+    public static List<Long> versions(Long id, String ifMatch){
+        if(ifMatch == null || ifMatch.isBlank()) return null;
+
+        List<Long> versions = new ArrayList<>();
+        String prefix = id + "-";
+        for(ETag eTag : ETag.parse(ifMatch)){
+            if(eTag.isWildcard()) return null;
+            if(eTag.weak() || !eTag.tag().startsWith(prefix)) continue;
+            try {
+                versions.add(Long.parseLong(eTag.tag().substring(prefix.length())));
+            } catch (NumberFormatException ignored) {
+                //чужой формат ETag не совпадает ни с одной версией
+            }
+        }
+        return versions;
+    }
+}
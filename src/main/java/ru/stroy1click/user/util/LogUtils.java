@@ -0,0 +1,13 @@
+package ru.stroy1click.user.util;
+
+public class LogUtils {
+
+    //в логах остаются первая буква и домен: m***@gmail.com
+    public static String maskEmail(String email){
+        if(email == null) return null;
+
+        int at = email.indexOf('@');
+        if(at <= 0) return "***";
+        return email.charAt(0) + "***" + email.substring(at);
+    }
+}
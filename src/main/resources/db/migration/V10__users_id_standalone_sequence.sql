@@ -0,0 +1,9 @@
+-- identity-последовательность скрыта из information_schema.sequences, и ddl-auto: validate
+-- не находит users_id_seq из @SequenceGenerator в User. Заменяем её обычной, как в user_events
+alter table account.users alter column id drop identity if exists;
+
+create sequence if not exists account.users_id_seq increment by 50 owned by account.users.id;
+
+select setval('account.users_id_seq', coalesce((select max(id) from account.users), 0) + 1, false);
+
+alter table account.users alter column id set default nextval('account.users_id_seq');
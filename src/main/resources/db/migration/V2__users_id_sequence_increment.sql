@@ -0,0 +1,2 @@
+-- шаг совпадает с allocationSize в User: Hibernate резервирует по 50 id за один nextval
+alter table account.users alter column id set increment by 50;
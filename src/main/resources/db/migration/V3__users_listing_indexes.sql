@@ -0,0 +1,5 @@
+-- keyset-пагинация GET /api/v1/users: фильтр по равенству + порядок по id берутся из одного индекса,
+-- без фильтров используется первичный ключ
+create index if not exists users_role_email_confirmed_id_idx on account.users(role, email_confirmed, id);
+
+create index if not exists users_email_confirmed_id_idx on account.users(email_confirmed, id);
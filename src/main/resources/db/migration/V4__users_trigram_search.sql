@@ -0,0 +1,8 @@
+-- поиск по началу и подстроке: like '%abc%' и like 'ab%' по lower(...) обслуживаются GIN-индексами pg_trgm
+create extension if not exists pg_trgm;
+
+create index if not exists users_first_name_trgm_idx on account.users using gin (lower(first_name) gin_trgm_ops);
+
+create index if not exists users_last_name_trgm_idx on account.users using gin (lower(last_name) gin_trgm_ops);
+
+create index if not exists users_email_trgm_idx on account.users using gin (lower(email) gin_trgm_ops);
@@ -0,0 +1,16 @@
+-- outbox изменений пользователей: событие пишется в одной транзакции с изменением,
+-- stream_position назначает relay при публикации, по нему потребители читают поток
+create sequence if not exists account.user_events_id_seq increment by 50;
+
+create table if not exists account.user_events(
+    id bigint primary key default nextval('account.user_events_id_seq') ,
+    user_id bigint not null ,
+    type varchar(30) not null ,
+    payload text ,
+    created_at timestamptz not null default now() ,
+    stream_position bigint unique ,
+    published_at timestamptz
+);
+
+-- очередь relay: только неопубликованные события
+create index if not exists user_events_unpublished_idx on account.user_events(id) where stream_position is null;
@@ -0,0 +1,3 @@
+-- версия строки: увеличивается каждой записью и штампуется в значения кэша,
+-- чтобы значение, прочитанное до коммита, не перезаписало в кэше более новое
+alter table account.users add column if not exists version bigint not null default 0;
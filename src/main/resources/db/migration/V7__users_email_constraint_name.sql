@@ -0,0 +1,3 @@
+-- явное имя вместо сгенерированного users_email_key: по нему AdviceController
+-- отличает занятый email от других нарушений целостности
+alter table account.users rename constraint users_email_key to users_email_unique;
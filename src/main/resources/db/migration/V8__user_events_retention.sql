@@ -0,0 +1,2 @@
+-- очистка outbox: опубликованные события удаляются по published_at, старейшие первыми
+create index if not exists user_events_published_at_idx on account.user_events(published_at) where published_at is not null;
@@ -0,0 +1,3 @@
+-- фильтр только по role: индекс (role, email_confirmed, id) не отдаёт строки роли в порядке id,
+-- и findPage сортировал бы после фильтрации
+create index if not exists users_role_id_idx on account.users(role, id);
@@ -1,25 +1,61 @@
 package ru.stroy1click.user.integration;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.stroy1click.user.cache.UserCache;
 import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.dto.UserSummaryPage;
 import ru.stroy1click.user.model.Role;
+import ru.stroy1click.user.model.UserBatchRequest;
+import ru.stroy1click.user.outbox.UserEventRelay;
+import ru.stroy1click.user.repository.UserRepository;
+import ru.stroy1click.user.service.UserService;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Import(TestcontainersConfiguration.class)
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.jpa.properties.hibernate.generate_statistics=true"
+)
 class UserIntegrationTests {
 
     @Autowired
     private TestRestTemplate testRestTemplate;
 
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private UserEventRelay userEventRelay;
+
     @Test
     public void createUser_WithValidData_ReturnsCreatedUser(){
-        UserDto userDto = new UserDto(null, "firstName", "lastName", "email@gmail.com", "password", false, Role.ROLE_USER);
+        UserDto userDto = new UserDto(null, "firstName", "lastName", "email@gmail.com", "password", false, Role.ROLE_USER, null);
         HttpEntity<UserDto> createEntity = new HttpEntity<>(userDto);
 
         ResponseEntity<UserDto> responseEntity = this.testRestTemplate.exchange(
@@ -43,9 +79,29 @@ class UserIntegrationTests {
         Assertions.assertEquals(userDto.getFirstName(),createUser.getFirstName());
     }
 
+    @Test
+    public void createUser_WhenEmailTakenOnAnotherNode_ReturnsConflict(){
+        //строка появилась мимо фильтра Блума этого узла
+        this.jdbcTemplate.update("""
+                insert into account.users(first_name, last_name, email, password, role, email_confirmed)
+                values ('firstName', 'lastName', 'other_node@gmail.com', 'password', 'ROLE_USER', false)
+                """);
+        UserDto userDto = new UserDto(null, "firstName", "lastName", "other_node@gmail.com", "password", false, Role.ROLE_USER, null);
+
+        ResponseEntity<ProblemDetail> responseEntity = this.testRestTemplate.exchange(
+                "/api/v1/users",
+                HttpMethod.POST,
+                new HttpEntity<>(userDto),
+                ProblemDetail.class
+        );
+
+        Assertions.assertEquals(HttpStatus.CONFLICT, responseEntity.getStatusCode());
+        Assertions.assertEquals("Пользователь уже существует", responseEntity.getBody().getTitle());
+    }
+
     @Test
     public void updateUser_WithValidData_ReturnsSuccessMessage() {
-        UserDto userDto = new UserDto(null, "newFirstName", "lastName", "email@gmail.com", "password", false, Role.ROLE_USER);
+        UserDto userDto = new UserDto(null, "newFirstName", "lastName", "email@gmail.com", "password", false, Role.ROLE_USER, null);
         HttpEntity<UserDto> updatedEntity = new HttpEntity<>(userDto);
 
         ResponseEntity<String> responseEntity = this.testRestTemplate.exchange(
@@ -95,6 +151,63 @@ class UserIntegrationTests {
         Assertions.assertEquals("Mike", responseEntity.getBody().getFirstName());
     }
 
+    @Test
+    public void getUsers_ByIdsAndEmails_ReturnsFoundUsers() {
+        UserBatchRequest batchRequest = new UserBatchRequest(List.of(1L, 1000L), List.of("kate_thompson@gmail.com"));
+
+        ResponseEntity<UserDto[]> responseEntity = this.testRestTemplate.exchange(
+                "/api/v1/users/batch",
+                HttpMethod.POST,
+                new HttpEntity<>(batchRequest),
+                UserDto[].class
+        );
+
+        Assertions.assertTrue(responseEntity.getStatusCode().is2xxSuccessful());
+        Assertions.assertEquals(2, responseEntity.getBody().length);
+        Assertions.assertEquals("Mike", responseEntity.getBody()[0].getFirstName());
+        Assertions.assertEquals("kate_thompson@gmail.com", responseEntity.getBody()[1].getEmail());
+    }
+
+    @Test
+    public void getUsers_WithKeysetPagination_ReturnsPageAndNextAfterId() {
+        ResponseEntity<UserSummaryPage> firstPage = this.testRestTemplate.exchange(
+                "/api/v1/users?limit=1&role=ROLE_USER",
+                HttpMethod.GET,
+                HttpEntity.EMPTY,
+                UserSummaryPage.class
+        );
+        ResponseEntity<UserSummaryPage> nextPage = this.testRestTemplate.exchange(
+                "/api/v1/users?limit=1&role=ROLE_USER&afterId=" + firstPage.getBody().nextAfterId(),
+                HttpMethod.GET,
+                HttpEntity.EMPTY,
+                UserSummaryPage.class
+        );
+
+        Assertions.assertTrue(firstPage.getStatusCode().is2xxSuccessful());
+        Assertions.assertEquals(1, firstPage.getBody().items().size());
+        Assertions.assertEquals(1, nextPage.getBody().items().size());
+        Assertions.assertTrue(nextPage.getBody().items().get(0).id() > firstPage.getBody().nextAfterId());
+    }
+
+    @Test
+    public void existsUser_ByEmail_ReturnsNoContentOrNotFound() {
+        ResponseEntity<Void> existing = this.testRestTemplate.exchange(
+                "/api/v1/users/exists?email=mike_thompson@gmail.com",
+                HttpMethod.HEAD,
+                HttpEntity.EMPTY,
+                Void.class
+        );
+        ResponseEntity<Void> missing = this.testRestTemplate.exchange(
+                "/api/v1/users/exists?email=notfound@gmail.com",
+                HttpMethod.HEAD,
+                HttpEntity.EMPTY,
+                Void.class
+        );
+
+        Assertions.assertEquals(HttpStatus.NO_CONTENT, existing.getStatusCode());
+        Assertions.assertEquals(HttpStatus.NOT_FOUND, missing.getStatusCode());
+    }
+
     @Test
     public void getUserByEmail_WhenEmailNotFound_ReturnsNotFound() {
         String email = "notfound@gmail.com";
@@ -135,7 +248,7 @@ class UserIntegrationTests {
 
     @Test
     public void updateUser_WithEmptyFirstName_ReturnsValidationError() {
-        UserDto userDtoWithEmptyFirstName = new UserDto(null, "", "lastName", "email@gmail.com", "password", false, Role.ROLE_USER);
+        UserDto userDtoWithEmptyFirstName = new UserDto(null, "", "lastName", "email@gmail.com", "password", false, Role.ROLE_USER, null);
         HttpEntity<UserDto> entityWithEmptyFirstName = new HttpEntity<>(userDtoWithEmptyFirstName);
 
         ResponseEntity<ProblemDetail> responseWithEmptyFirstName = this.testRestTemplate.exchange(
@@ -151,7 +264,7 @@ class UserIntegrationTests {
 
     @Test
     public void updateUser_WithTooShortFirstName_ReturnsValidationError() {
-        UserDto userDtoWithShortFirstName = new UserDto(null, "A", "lastName", "email@gmail.com", "password", false, Role.ROLE_USER);
+        UserDto userDtoWithShortFirstName = new UserDto(null, "A", "lastName", "email@gmail.com", "password", false, Role.ROLE_USER, null);
         HttpEntity<UserDto> entityWithShortFirstName = new HttpEntity<>(userDtoWithShortFirstName);
 
         ResponseEntity<ProblemDetail> responseWithShortFirstName = this.testRestTemplate.exchange(
@@ -168,7 +281,7 @@ class UserIntegrationTests {
 
     @Test
     public void updateUser_WithEmptyEmail_ReturnsValidationError() {
-        UserDto userDtoWithEmptyEmail = new UserDto(null, "firstName", "lastName", "", "password", false, Role.ROLE_USER);
+        UserDto userDtoWithEmptyEmail = new UserDto(null, "firstName", "lastName", "", "password", false, Role.ROLE_USER, null);
         HttpEntity<UserDto> entityWithEmptyEmail = new HttpEntity<>(userDtoWithEmptyEmail);
 
         ResponseEntity<ProblemDetail> responseWithEmptyEmail = this.testRestTemplate.exchange(
@@ -185,7 +298,7 @@ class UserIntegrationTests {
 
     @Test
     public void updateUser_WithInvalidEmailFormat_ReturnsValidationError() {
-        UserDto userDtoWithInvalidEmail = new UserDto(null, "firstName", "lastName", "invalid-email", "password", false, Role.ROLE_USER);
+        UserDto userDtoWithInvalidEmail = new UserDto(null, "firstName", "lastName", "invalid-email", "password", false, Role.ROLE_USER, null);
         HttpEntity<UserDto> entityWithInvalidEmail = new HttpEntity<>(userDtoWithInvalidEmail);
 
         ResponseEntity<ProblemDetail> responseWithInvalidEmail = this.testRestTemplate.exchange(
@@ -202,7 +315,7 @@ class UserIntegrationTests {
 
     @Test
     public void updateUser_WithNullRole_ReturnsValidationError() {
-        UserDto userDtoWithNullRole = new UserDto(null, "firstName", "lastName", "email@gmail.com", "password", false, null);
+        UserDto userDtoWithNullRole = new UserDto(null, "firstName", "lastName", "email@gmail.com", "password", false, null, null);
         HttpEntity<UserDto> entityWithNullRole = new HttpEntity<>(userDtoWithNullRole);
 
         ResponseEntity<ProblemDetail> responseWithNullRole = this.testRestTemplate.exchange(
@@ -216,4 +329,156 @@ class UserIntegrationTests {
         Assertions.assertEquals("Ошибка валидации", responseWithNullRole.getBody().getTitle());
         Assertions.assertEquals("Роль не может быть пустой", responseWithNullRole.getBody().getDetail());
     }
+
+    @Test
+    public void writes_TakeOneStatementEach_InsteadOfLoadThenSave() {
+        UserDto created = this.userService.create(
+                new UserDto(null, "Statement", "Count", "statement_count@gmail.com", "password", false, Role.ROLE_USER, null)
+        );
+        Statistics statistics = this.entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        assertOneUserStatement(statistics, () ->
+                this.userService.update(created.getId(), new UserDto(null, "Single", "Statement", null, null, null, null, null)));
+        assertOneUserStatement(statistics, () -> this.userService.updateEmailConfirmedStatus(created.getEmail()));
+        assertOneUserStatement(statistics, () -> this.userService.updatePassword(created.getEmail(), "newPassword"));
+        assertOneUserStatement(statistics, () -> this.userService.delete(created.getId()));
+        Assertions.assertTrue(this.userRepository.findById(created.getId()).isEmpty());
+    }
+
+    @Test
+    public void conditionalRequests_UseVersionETag_ForNotModifiedAndIfMatch() {
+        UserDto created = this.userService.create(
+                new UserDto(null, "Conditional", "Request", "conditional_request@gmail.com", "password", false, Role.ROLE_USER, null)
+        );
+        String path = "/api/v1/users/" + created.getId();
+
+        ResponseEntity<UserDto> first = this.testRestTemplate.getForEntity(path, UserDto.class);
+        String eTag = first.getHeaders().getETag();
+        Assertions.assertEquals("\"%d-%d\"".formatted(created.getId(), first.getBody().getVersion()), eTag);
+
+        HttpHeaders ifNoneMatch = new HttpHeaders();
+        ifNoneMatch.setIfNoneMatch(eTag);
+        ResponseEntity<String> notModified = this.testRestTemplate.exchange(path, HttpMethod.GET, new HttpEntity<>(ifNoneMatch), String.class);
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        Assertions.assertNull(notModified.getBody());
+
+        UserDto update = new UserDto(null, "Matched", "Request", "conditional_request@gmail.com", "password", false, Role.ROLE_USER, null);
+        HttpHeaders ifMatch = new HttpHeaders();
+        ifMatch.setIfMatch(eTag);
+        ResponseEntity<String> updated = this.testRestTemplate.exchange(path, HttpMethod.PATCH, new HttpEntity<>(update, ifMatch), String.class);
+        Assertions.assertEquals(HttpStatus.OK, updated.getStatusCode());
+        Assertions.assertNotEquals(eTag, updated.getHeaders().getETag());
+
+        //тот же If-Match уже устарел
+        ResponseEntity<ProblemDetail> stale = this.testRestTemplate.exchange(path, HttpMethod.PATCH, new HttpEntity<>(update, ifMatch), ProblemDetail.class);
+        Assertions.assertEquals(HttpStatus.PRECONDITION_FAILED, stale.getStatusCode());
+
+        ResponseEntity<UserDto> current = this.testRestTemplate.exchange(path, HttpMethod.GET, new HttpEntity<>(ifNoneMatch), UserDto.class);
+        Assertions.assertEquals(HttpStatus.OK, current.getStatusCode());
+        Assertions.assertEquals(updated.getHeaders().getETag(), current.getHeaders().getETag());
+        Assertions.assertEquals("Matched", current.getBody().getFirstName());
+    }
+
+    @Test
+    public void readPath_SelectsIntoDto_WithoutLoadingEntities() {
+        Statistics statistics = this.entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        UserDto byId = this.userRepository.findDtoById(1L).orElseThrow();
+        UserDto byEmail = this.userRepository.findDtoByEmail(byId.getEmail()).orElseThrow();
+        List<UserDto> batch = this.userRepository.findAllDtoByIdInOrEmailIn(List.of(1L), List.of());
+
+        Assertions.assertEquals(0, statistics.getEntityLoadCount());
+        Assertions.assertEquals(byId, byEmail);
+        Assertions.assertEquals(List.of(byId), batch);
+        Assertions.assertNotNull(byId.getVersion());
+        Assertions.assertTrue(this.userRepository.findDtoById(Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void cache_RejectsValueReadBeforeCommit_OfNewerVersion() {
+        UserDto created = this.userService.create(
+                new UserDto(null, "Stale", "Reader", "stale_reader@gmail.com", "password", false, Role.ROLE_USER, null)
+        );
+        UserDto readBeforeCommit = this.userService.get(created.getId());
+
+        this.userService.update(created.getId(), new UserDto(null, "Fresh", "Reader", null, null, null, null, null));
+        //читатель, начавший до коммита, пишет в кэш уже после инвалидации
+        this.cacheManager.getCache(UserCache.USER).put(created.getId(), readBeforeCommit);
+
+        UserDto cached = this.userService.get(created.getId());
+        Assertions.assertEquals("Fresh", cached.getFirstName());
+        Assertions.assertEquals(readBeforeCommit.getVersion() + 1, cached.getVersion());
+    }
+
+    @Test
+    public void getEvents_AfterRelay_ReturnsChangesInStreamOrder() {
+        UserDto created = this.userService.create(
+                new UserDto(null, "Event", "Stream", "event_stream@gmail.com", "password", false, Role.ROLE_USER, null)
+        );
+        this.userService.update(created.getId(), new UserDto(null, "Renamed", "Stream", null, null, null, null, null));
+        this.userEventRelay.relay();
+
+        //payload отдаётся как вложенный json, поэтому читаем дерево, а не UserEventPage
+        JsonNode page = this.testRestTemplate.getForObject("/api/v1/users/events?after=0&limit=1000", JsonNode.class);
+
+        List<JsonNode> events = new ArrayList<>();
+        page.get("events").forEach(event -> {
+            if(event.get("userId").asLong() == created.getId()) events.add(event);
+        });
+        Assertions.assertEquals(List.of("CREATED", "UPDATED"), events.stream().map(event -> event.get("type").asText()).toList());
+        Assertions.assertTrue(events.get(0).get("position").asLong() < events.get(1).get("position").asLong());
+        Assertions.assertEquals("event_stream@gmail.com", events.get(0).get("payload").get("email").asText());
+        Assertions.assertFalse(events.get(0).get("payload").has("password"));
+        Assertions.assertEquals("Renamed", events.get(1).get("payload").get("firstName").asText());
+        Assertions.assertEquals(page.get("events").get(page.get("events").size() - 1).get("position").asLong(),
+                page.get("nextAfter").asLong());
+    }
+
+    @Test
+    public void cleanupOutbox_RemovesOldPublishedEvents_ButKeepsLastPosition() {
+        this.userService.create(
+                new UserDto(null, "Event", "Cleanup", "event_cleanup@gmail.com", "password", false, Role.ROLE_USER, null)
+        );
+        this.userEventRelay.relay();
+        Long lastPosition = this.jdbcTemplate.queryForObject("select max(stream_position) from account.user_events", Long.class);
+        this.jdbcTemplate.update("update account.user_events set published_at = now() - interval '30 days' where published_at is not null");
+
+        this.userEventRelay.cleanup();
+
+        Assertions.assertEquals(List.of(lastPosition), this.jdbcTemplate.queryForList(
+                "select stream_position from account.user_events where stream_position is not null", Long.class));
+    }
+
+    @Test
+    public void prometheus_AfterCachedRead_ExposesCacheRepositoryAndHashingMetrics() {
+        this.testRestTemplate.getForEntity("/api/v1/users/1", UserDto.class);
+        this.testRestTemplate.getForEntity("/api/v1/users/1", UserDto.class);
+
+        ResponseEntity<String> responseEntity = this.testRestTemplate.getForEntity("/actuator/prometheus", String.class);
+
+        Assertions.assertTrue(responseEntity.getStatusCode().is2xxSuccessful());
+        String metrics = responseEntity.getBody();
+        Assertions.assertTrue(metrics.contains("cache_lookups_total{"));
+        Assertions.assertTrue(metrics.contains("cache_gets_total{"));
+        Assertions.assertTrue(metrics.contains("spring_data_repository_invocations_seconds_bucket{"));
+        Assertions.assertTrue(metrics.contains("password_hash_duration_seconds"));
+        Assertions.assertTrue(metrics.contains("concurrency_limit"));
+    }
+
+    //кроме самой записи в транзакции только вставка события в outbox и, раз в 50 событий, запрос к последовательности
+    private void assertOneUserStatement(Statistics statistics, Runnable write) {
+        long sequenceBefore = outboxSequenceValue();
+        statistics.clear();
+        write.run();
+        long statements = statistics.getPrepareStatementCount() - statistics.getEntityInsertCount();
+        if(outboxSequenceValue() != sequenceBefore) statements--;
+
+        Assertions.assertEquals(1, statistics.getEntityInsertCount());
+        Assertions.assertEquals(1, statements);
+    }
+
+    private long outboxSequenceValue() {
+        return this.jdbcTemplate.queryForObject("select last_value from account.user_events_id_seq", Long.class);
+    }
 }
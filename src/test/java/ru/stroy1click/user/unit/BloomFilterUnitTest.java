@@ -0,0 +1,35 @@
+package ru.stroy1click.user.unit;
+
+import org.junit.jupiter.api.Test;
+import ru.stroy1click.user.util.BloomFilter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BloomFilterUnitTest {
+
+    @Test
+    void mightContain_ShouldNeverReturnFalse_ForAddedValues() {
+        BloomFilter bloomFilter = new BloomFilter(10_000, 0.01);
+        for(int i = 0; i < 10_000; i++){
+            bloomFilter.put("user" + i + "@mail.com");
+        }
+
+        for(int i = 0; i < 10_000; i++){
+            assertTrue(bloomFilter.mightContain("user" + i + "@mail.com"));
+        }
+    }
+
+    @Test
+    void mightContain_ShouldKeepFalsePositiveRateNearConfigured() {
+        BloomFilter bloomFilter = new BloomFilter(10_000, 0.01);
+        for(int i = 0; i < 10_000; i++){
+            bloomFilter.put("user" + i + "@mail.com");
+        }
+
+        int falsePositives = 0;
+        for(int i = 0; i < 10_000; i++){
+            if(bloomFilter.mightContain("absent" + i + "@mail.com")) falsePositives++;
+        }
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.stroy1click.user.unit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import ru.stroy1click.user.cache.CacheEntry;
+import ru.stroy1click.user.cache.CacheMarker;
+import ru.stroy1click.user.cache.CompactCacheSerializer;
+import ru.stroy1click.user.config.CacheConfig;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.model.Role;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactCacheSerializerUnitTest {
+
+    private RedisSerializer<Object> jsonSerializer;
+
+    private CompactCacheSerializer serializer;
+
+    @BeforeEach
+    void setUp() {
+        this.jsonSerializer = new CacheConfig().cacheValueSerializer();
+        this.serializer = new CompactCacheSerializer(this.jsonSerializer, 512);
+    }
+
+    @Test
+    void serialize_ShouldRoundTripUserDto_AndBeSmallerThanJson() {
+        UserDto userDto = new UserDto(1L, "Mike", "Thompson", "mike_thompson@gmail.com",
+                "{bcrypt}$2a$10$8rOJ5FzrDa4Yw0T8yPTWxOnh0uR6WD/c5.Dx3S/V0yHBSbR1j3lJm", true, Role.ROLE_USER, 3L);
+
+        byte[] bytes = this.serializer.serialize(userDto);
+
+        assertEquals(userDto, this.serializer.deserialize(bytes));
+        assertTrue(bytes.length < this.jsonSerializer.serialize(userDto).length / 2);
+    }
+
+    @Test
+    void serialize_ShouldKeepNullFields() {
+        UserDto userDto = UserDto.builder().id(2L).email("test@mail.com").build();
+
+        assertEquals(userDto, this.serializer.deserialize(this.serializer.serialize(userDto)));
+    }
+
+    @Test
+    void serialize_ShouldCompressLargeLists() {
+        List<UserSummaryDto> users = new ArrayList<>(LongStream.range(1, 50)
+                .mapToObj(id -> new UserSummaryDto(id, "John", "Doe", "john" + id + "@mail.com", true, Role.ROLE_USER))
+                .toList());
+
+        byte[] bytes = this.serializer.serialize(users);
+
+        assertEquals(users, this.serializer.deserialize(bytes));
+        assertEquals(1, bytes[1] & 1);
+    }
+
+    @Test
+    void deserialize_ShouldReadLegacyJsonAndIds() {
+        UserDto userDto = UserDto.builder().id(3L).email("test@mail.com").build();
+
+        assertEquals(userDto, this.serializer.deserialize(this.jsonSerializer.serialize(userDto)));
+        assertEquals(42L, this.serializer.deserialize(this.serializer.serialize(42L)));
+    }
+
+    @Test
+    void serialize_ShouldRoundTripCacheEntry_InBothFormats() {
+        CacheEntry entry = new CacheEntry(UserDto.builder().id(4L).email("test@mail.com").build(), 1_760_000_000_000L, 1500);
+
+        assertEquals(entry, this.serializer.deserialize(this.serializer.serialize(entry)));
+        assertEquals(entry, this.jsonSerializer.deserialize(this.jsonSerializer.serialize(entry)));
+    }
+
+    @Test
+    void serialize_ShouldRoundTripNotFoundMarker_InBothFormats() {
+        CacheEntry entry = new CacheEntry(CacheMarker.NOT_FOUND, 1_760_000_000_000L, 0);
+
+        assertEquals(entry, this.serializer.deserialize(this.serializer.serialize(entry)));
+        assertEquals(entry, this.jsonSerializer.deserialize(this.jsonSerializer.serialize(entry)));
+    }
+
+    @Test
+    void deserialize_ShouldTreatUnknownVersionAsMiss() {
+        byte[] bytes = this.serializer.serialize(5L);
+        //запись следующей версии формата во время выкладки
+        bytes[0]++;
+
+        assertNull(this.serializer.deserialize(bytes));
+    }
+}
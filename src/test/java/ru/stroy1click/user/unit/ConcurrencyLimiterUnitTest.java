@@ -0,0 +1,129 @@
+package ru.stroy1click.user.unit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.stroy1click.user.properties.ConcurrencyLimitProperties;
+import ru.stroy1click.user.ratelimit.AdaptiveConcurrencyLimiter;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrencyLimiterUnitTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private ConcurrencyLimitProperties concurrencyLimitProperties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        this.concurrencyLimitProperties = new ConcurrencyLimitProperties();
+        this.concurrencyLimitProperties.setInitialLimit(20);
+        this.concurrencyLimitProperties.setMinLimit(2);
+        //лимит пересчитывается после каждого замера
+        this.concurrencyLimitProperties.setWindow(Duration.ZERO);
+        this.concurrencyLimitProperties.setMinWindowSamples(1);
+        this.meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void tryAcquire_ShouldShedWritesBeforeReads() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(this.concurrencyLimitProperties, this.meterRegistry);
+
+        //записям доступно 70% из 20
+        for(int i = 0; i < 14; i++){
+            assertTrue(limiter.tryAcquire(false));
+        }
+        assertFalse(limiter.tryAcquire(false));
+        for(int i = 0; i < 6; i++){
+            assertTrue(limiter.tryAcquire(true));
+        }
+        assertFalse(limiter.tryAcquire(true));
+
+        assertEquals(1, this.meterRegistry.get("concurrency.rejected").tag("priority", "write").counter().count());
+        assertEquals(1, this.meterRegistry.get("concurrency.rejected").tag("priority", "read").counter().count());
+        assertEquals(20, this.meterRegistry.get("concurrency.inflight").gauge().value());
+    }
+
+    @Test
+    void release_ShouldLowerLimit_WhenLatencyGrows() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(this.concurrencyLimitProperties, this.meterRegistry);
+        complete(limiter, 10, 10 * MILLI, false);
+        int before = limiter.getLimit();
+
+        //БД тормозит: задержка в 10 раз выше базовой
+        complete(limiter, 10, 100 * MILLI, false);
+
+        assertTrue(limiter.getLimit() < before);
+        assertEquals(limiter.getLimit(), this.meterRegistry.get("concurrency.limit").gauge().value());
+    }
+
+    @Test
+    void release_ShouldKeepLimitDown_WhileLatencyStaysHigh() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(this.concurrencyLimitProperties, this.meterRegistry);
+        complete(limiter, 10, 10 * MILLI, false);
+
+        //затяжная просадка БД под полной нагрузкой: базовая задержка не должна её догнать
+        for(int round = 0; round < 200; round++){
+            int busy = limiter.getLimit();
+            for(int i = 0; i < busy; i++){
+                assertTrue(limiter.tryAcquire(true));
+            }
+            for(int i = 0; i < busy; i++){
+                limiter.release(100 * MILLI, false);
+            }
+        }
+
+        assertTrue(limiter.getLimit() < 10);
+    }
+
+    @Test
+    void release_ShouldRaiseLimit_UnderLoadWithStableLatency() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(this.concurrencyLimitProperties, this.meterRegistry);
+
+        for(int round = 0; round < 5; round++){
+            //занята больше половины лимита, задержка не растёт
+            int busy = limiter.getLimit();
+            for(int i = 0; i < busy; i++){
+                assertTrue(limiter.tryAcquire(true));
+            }
+            for(int i = 0; i < busy; i++){
+                limiter.release(10 * MILLI, false);
+            }
+        }
+
+        assertTrue(limiter.getLimit() > 20);
+    }
+
+    @Test
+    void release_ShouldNotRaiseLimit_WhenIdle() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(this.concurrencyLimitProperties, this.meterRegistry);
+
+        complete(limiter, 50, 10 * MILLI, false);
+
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    void release_ShouldBackOff_OnServerErrors() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(this.concurrencyLimitProperties, this.meterRegistry);
+
+        //ошибки быстрые, снижать лимит должна сама ошибка, а не задержка
+        complete(limiter, 30, MILLI, true);
+
+        assertTrue(limiter.getLimit() < 20);
+        assertTrue(limiter.getLimit() >= this.concurrencyLimitProperties.getMinLimit());
+    }
+
+    //запросы по одному: пик одновременных ниже половины лимита
+    private static void complete(AdaptiveConcurrencyLimiter limiter, int count, long rttNanos, boolean dropped) {
+        for(int i = 0; i < count; i++){
+            assertTrue(limiter.tryAcquire(true));
+            limiter.release(rttNanos, dropped);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ru.stroy1click.user.unit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import ru.stroy1click.user.datasource.ConnectionBulkheadDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ConnectionBulkheadDataSourceUnitTest {
+
+    @Mock
+    private DataSource targetDataSource;
+
+    @Mock
+    private Connection connection;
+
+    private ConnectionBulkheadDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        when(this.targetDataSource.getConnection()).thenReturn(this.connection);
+
+        this.dataSource = new ConnectionBulkheadDataSource(this.targetDataSource, 1, Duration.ofMillis(50));
+    }
+
+    @Test
+    void getConnection_ShouldFailFast_WhenAllPermitsAreTaken() throws Exception {
+        Connection first = this.dataSource.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, () -> this.dataSource.getConnection());
+
+        first.close();
+        assertNotNull(this.dataSource.getConnection());
+    }
+
+    @Test
+    void close_ShouldReleasePermitOnlyOnce() throws Exception {
+        Connection first = this.dataSource.getConnection();
+
+        first.close();
+        first.close();
+
+        assertEquals(1, this.dataSource.getAvailablePermits());
+        verify(this.connection, times(2)).close();
+    }
+}
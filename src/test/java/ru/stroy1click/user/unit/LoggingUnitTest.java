@@ -0,0 +1,104 @@
+package ru.stroy1click.user.unit;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.logging.SamplingTurboFilter;
+import ru.stroy1click.user.model.Role;
+import ru.stroy1click.user.util.LogUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoggingUnitTest {
+
+    private LoggerContext loggerContext;
+
+    private ListAppender<ILoggingEvent> appender;
+
+    @BeforeEach
+    void setUp() {
+        this.loggerContext = new LoggerContext();
+        SamplingTurboFilter filter = new SamplingTurboFilter();
+        filter.addLogger("ru.stroy1click.user.service");
+        filter.setLevel("DEBUG");
+        filter.setEvery(10);
+        filter.start();
+        this.loggerContext.addTurboFilter(filter);
+
+        this.appender = new ListAppender<>();
+        this.appender.start();
+        Logger root = this.loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+        root.addAppender(this.appender);
+    }
+
+    @Test
+    void samplingFilter_ShouldPassEveryNthDebugEvent_PerLogger() {
+        Logger service = this.loggerContext.getLogger("ru.stroy1click.user.service.impl.UserServiceImpl");
+        Logger other = this.loggerContext.getLogger("ru.stroy1click.user.service.impl.UserExportServiceImpl");
+
+        for(int i = 0; i < 25; i++){
+            service.atDebug().addKeyValue("id", i).log("get");
+        }
+        other.atDebug().log("export");
+
+        //у каждого логгера свой счётчик: 0, 10 и 20 у первого, первое событие у второго
+        assertEquals(4, this.appender.list.size());
+        assertEquals("id", this.appender.list.getFirst().getKeyValuePairs().getFirst().key);
+        assertEquals(10, this.appender.list.get(1).getKeyValuePairs().getFirst().value);
+    }
+
+    @Test
+    void samplingFilter_ShouldNotTouchOtherLevelsAndLoggers() {
+        Logger service = this.loggerContext.getLogger("ru.stroy1click.user.service.impl.UserServiceImpl");
+        Logger cache = this.loggerContext.getLogger("ru.stroy1click.user.cache.CacheClear");
+
+        for(int i = 0; i < 5; i++){
+            service.atInfo().log("create");
+            cache.atDebug().log("clearUser");
+        }
+
+        assertEquals(5, this.appender.list.size());
+        assertTrue(this.appender.list.stream().allMatch(event -> event.getLevel() == Level.INFO));
+    }
+
+    @Test
+    void logbackXml_ShouldSampleOnlyNamedLoggers() throws Exception {
+        LoggerContext context = new LoggerContext();
+        JoranConfigurator configurator = new JoranConfigurator();
+        configurator.setContext(context);
+        configurator.doConfigure(getClass().getResource("/logback.xml"));
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.detachAndStopAllAppenders();
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        root.addAppender(appender);
+
+        context.getLogger("ru.stroy1click.user.service.impl.UserServiceImpl").debug("get");
+        context.getLogger("ru.stroy1click.user.cache.CacheClear").debug("clearUser");
+        context.getLogger("ru.stroy1click.user.cache.TwoLevelCache").debug("load");
+        context.getLogger("ru.stroy1click.user.outbox.UserEventRelay").debug("relay");
+
+        assertEquals(List.of("get", "clearUser"), appender.list.stream().map(ILoggingEvent::getMessage).toList());
+        context.stop();
+    }
+
+    @Test
+    void redaction_ShouldHidePasswordsAndMaskEmails() {
+        UserDto userDto = new UserDto(1L, "Mike", "Thompson", "mike_thompson@gmail.com",
+                "password123", true, Role.ROLE_USER, null);
+
+        assertFalse(userDto.toString().contains("password123"));
+        assertEquals("m***@gmail.com", LogUtils.maskEmail("mike_thompson@gmail.com"));
+        assertEquals("***", LogUtils.maskEmail("not-an-email"));
+        assertNull(LogUtils.maskEmail(null));
+    }
+}
@@ -0,0 +1,84 @@
+package ru.stroy1click.user.unit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.MessageSource;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import ru.stroy1click.user.exception.ServiceOverloadedException;
+import ru.stroy1click.user.properties.HashingProperties;
+import ru.stroy1click.user.service.impl.PasswordHashServiceImpl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+public class PasswordHashServiceUnitTest {
+
+    @Mock
+    private PasswordEncoder passwordEncoder;
+
+    @Mock
+    private MessageSource messageSource;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private PasswordHashServiceImpl passwordHashService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        this.meterRegistry = new SimpleMeterRegistry();
+
+        HashingProperties hashingProperties = new HashingProperties();
+        hashingProperties.setThreads(1);
+        hashingProperties.setQueueCapacity(1);
+        this.passwordHashService = new PasswordHashServiceImpl(this.passwordEncoder, this.messageSource,
+                hashingProperties, this.meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.passwordHashService.shutdown();
+    }
+
+    @Test
+    void encode_ShouldReturnEncodedPassword() {
+        when(this.passwordEncoder.encode("password")).thenReturn("encoded");
+
+        assertEquals("encoded", this.passwordHashService.encode("password"));
+        assertEquals(1, this.meterRegistry.get("password.hash.duration").timer().count());
+    }
+
+    @Test
+    void encode_ShouldRejectImmediately_WhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(this.passwordEncoder.encode(any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return "encoded";
+        });
+
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> this.passwordHashService.encode("first"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> this.passwordHashService.encode("second"));
+        while (this.meterRegistry.get("password.hash.queue.size").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+
+        assertThrows(ServiceOverloadedException.class, () -> this.passwordHashService.encode("third"));
+        assertEquals(1, this.meterRegistry.get("password.hash.rejected").counter().count());
+
+        release.countDown();
+        assertEquals("encoded", running.get(5, TimeUnit.SECONDS));
+        assertEquals("encoded", queued.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,145 @@
+package ru.stroy1click.user.unit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.MessageSource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import ru.stroy1click.user.properties.RateLimitProperties;
+import ru.stroy1click.user.ratelimit.ClientRateLimiter;
+import ru.stroy1click.user.ratelimit.ClusterRateBudget;
+import ru.stroy1click.user.ratelimit.RateLimitInterceptor;
+import ru.stroy1click.user.ratelimit.TokenBucket;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class RateLimiterUnitTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    private RateLimitProperties rateLimitProperties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        this.rateLimitProperties = new RateLimitProperties();
+        this.meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void tokenBucket_ShouldAllowBurstUpToCapacity_ThenRefillAtRate() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+
+        for(int i = 0; i < 5; i++){
+            assertEquals(0, bucket.tryAcquire(1, 0));
+        }
+        assertEquals(SECOND / 10, bucket.tryAcquire(1, 0));
+
+        //через 0.2 c пополнилось два токена
+        assertEquals(0, bucket.tryAcquire(2, SECOND / 5));
+        assertTrue(bucket.tryAcquire(1, SECOND / 5) > 0);
+    }
+
+    @Test
+    void tokenBucket_ShouldChargeWeightedCost() {
+        TokenBucket bucket = new TokenBucket(10, 20, 0);
+
+        assertEquals(0, bucket.tryAcquire(10, 0));
+        assertEquals(0, bucket.tryAcquire(10, 0));
+        //дорогой вызов ждёт пополнения на всю свою стоимость
+        assertEquals(SECOND, bucket.tryAcquire(10, 0));
+    }
+
+    @Test
+    void tryAcquire_ShouldKeepSeparateBuckets_PerClientAndEndpoint() {
+        this.rateLimitProperties.getBucket().setCapacity(10);
+        ClientRateLimiter limiter = new ClientRateLimiter(this.rateLimitProperties,
+                new ClusterRateBudget(this.stringRedisTemplate, this.rateLimitProperties), this.meterRegistry);
+
+        assertNull(limiter.tryAcquire("batch-job", "create", 10));
+        assertNotNull(limiter.tryAcquire("batch-job", "create", 10));
+
+        //шумный клиент не задевает ни свои другие эндпоинты, ни других клиентов
+        assertNull(limiter.tryAcquire("batch-job", "get", 1));
+        assertNull(limiter.tryAcquire("auth-service", "create", 10));
+        assertEquals(1, this.meterRegistry.get("rate_limit.rejected").tag("endpoint", "create").counter().count());
+        verifyNoInteractions(this.stringRedisTemplate);
+    }
+
+    @Test
+    void tryAcquire_ShouldUseEndpointOverride() {
+        RateLimitProperties.Bucket exportBucket = new RateLimitProperties.Bucket();
+        exportBucket.setRate(1);
+        exportBucket.setCapacity(1);
+        this.rateLimitProperties.getEndpoints().put("export", exportBucket);
+        ClientRateLimiter limiter = new ClientRateLimiter(this.rateLimitProperties,
+                new ClusterRateBudget(this.stringRedisTemplate, this.rateLimitProperties), this.meterRegistry);
+
+        assertNull(limiter.tryAcquire("client", "export", 1));
+        Duration retryAfter = limiter.tryAcquire("client", "export", 1);
+        assertNotNull(retryAfter);
+        assertTrue(retryAfter.toMillis() > 900);
+    }
+
+    @Test
+    void interceptor_ShouldTrustClientHeader_OnlyFromConfiguredProxies() throws Exception {
+        this.rateLimitProperties.getTrustedProxies().add("10.0.0.1");
+        ClientRateLimiter limiter = mock(ClientRateLimiter.class);
+        when(limiter.tryAcquire(anyString(), anyString(), anyInt())).thenReturn(null);
+        RateLimitInterceptor interceptor = new RateLimitInterceptor(limiter, this.rateLimitProperties, mock(MessageSource.class));
+        HandlerMethod handler = new HandlerMethod(this, getClass().getDeclaredMethod("setUp"));
+
+        MockHttpServletRequest direct = new MockHttpServletRequest();
+        direct.setRemoteAddr("192.168.1.7");
+        direct.addHeader("X-Client-Id", "spoofed");
+        MockHttpServletRequest proxied = new MockHttpServletRequest();
+        proxied.setRemoteAddr("10.0.0.1");
+        proxied.addHeader("X-Client-Id", "auth-service");
+
+        assertTrue(interceptor.preHandle(direct, new MockHttpServletResponse(), handler));
+        assertTrue(interceptor.preHandle(proxied, new MockHttpServletResponse(), handler));
+
+        verify(limiter).tryAcquire("192.168.1.7", "setUp", 1);
+        verify(limiter).tryAcquire("auth-service", "setUp", 1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void clusterBudget_ShouldLeaseInBatches_AndRejectWhenBudgetIsSpent() {
+        this.rateLimitProperties.getCluster().setEnabled(true);
+        this.rateLimitProperties.getCluster().setLeaseSize(10);
+        //Redis отдаёт одну полную пачку, затем бюджет окна исчерпан
+        when(this.stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(10L, 0L);
+        ClusterRateBudget budget = new ClusterRateBudget(this.stringRedisTemplate, this.rateLimitProperties);
+
+        int allowed = 0;
+        for(int i = 0; i < 15; i++){
+            if(budget.tryAcquire("client", 1, 5_000)) allowed++;
+        }
+
+        assertEquals(10, allowed);
+        //одна пачка на 10 вызовов; после отказа Redis до конца окна больше не спрашиваем
+        verify(this.stringRedisTemplate, times(2)).execute(any(RedisScript.class), anyList(), any(Object[].class));
+
+        //в новом окне узел снова спрашивает Redis
+        assertFalse(budget.tryAcquire("client", 1, 6_000));
+        verify(this.stringRedisTemplate, times(3)).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+}
@@ -0,0 +1,289 @@
+package ru.stroy1click.user.unit;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import ru.stroy1click.user.cache.CacheEntry;
+import ru.stroy1click.user.cache.CacheExpiry;
+import ru.stroy1click.user.cache.CacheInvalidationPublisher;
+import ru.stroy1click.user.cache.CacheMarker;
+import ru.stroy1click.user.cache.CacheVersionGuard;
+import ru.stroy1click.user.cache.TwoLevelCache;
+import ru.stroy1click.user.dto.UserDto;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class TwoLevelCacheUnitTest {
+
+    @Mock
+    private RedisCache redisCache;
+
+    @Mock
+    private CacheInvalidationPublisher cacheInvalidationPublisher;
+
+    @Mock
+    private CacheVersionGuard cacheVersionGuard;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private TwoLevelCache cache;
+
+    private UserDto userDto;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.cache = createCache(new CacheExpiry(Duration.ofSeconds(40), Duration.ofSeconds(5), 0, 0));
+        this.userDto = UserDto.builder().id(1L).firstName("John").email("test@mail.com").build();
+    }
+
+    @Test
+    void get_ShouldServeFromLocalCache_AfterFirstRedisHit() {
+        when(this.redisCache.get(1L)).thenReturn(new SimpleValueWrapper(this.userDto));
+
+        assertEquals(this.userDto, this.cache.get(1L).get());
+        assertEquals(this.userDto, this.cache.get(1L).get());
+
+        verify(this.redisCache, times(1)).get(1L);
+    }
+
+    @Test
+    void get_WithLoader_ShouldLoadAndPopulateBothLevels_WhenMissing() {
+        UserDto result = this.cache.get(1L, () -> this.userDto);
+
+        assertEquals(this.userDto, result);
+        verify(this.redisCache).put(eq(1L), argThat(entry -> this.userDto.equals(CacheEntry.unwrap(entry))));
+        assertEquals(this.userDto, this.cache.get(1L).get());
+    }
+
+    @Test
+    void get_WithLoader_ShouldRecordLoadDuration_OnMissOnly() {
+        this.cache.get(1L, () -> this.userDto);
+        this.cache.get(1L, () -> this.userDto);
+
+        assertEquals(1, this.meterRegistry.get("cache.load.duration").tag("cache", "user").timer().count());
+        assertEquals(1, this.meterRegistry.get("cache.lookups").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void get_WithLoader_ShouldRunOneLoad_ForConcurrentMisses() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Callable<UserDto> loader = () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return this.userDto;
+        };
+
+        CompletableFuture<UserDto> leader = CompletableFuture.supplyAsync(() -> this.cache.get(1L, loader));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<UserDto> follower = CompletableFuture.supplyAsync(() -> this.cache.get(1L, loader));
+        while (this.meterRegistry.get("cache.loads").tag("result", "coalesced").counter().count() < 1) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        assertEquals(this.userDto, leader.get(5, TimeUnit.SECONDS));
+        assertEquals(this.userDto, follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertEquals(1, this.meterRegistry.get("cache.loads").tag("result", "loaded").counter().count());
+    }
+
+    @Test
+    void get_WithLoader_ShouldPropagateLoaderException_ToCoalescedCallers() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<UserDto> loader = () -> {
+            loading.countDown();
+            release.await();
+            throw new IllegalStateException("not found");
+        };
+
+        CompletableFuture<UserDto> leader = CompletableFuture.supplyAsync(() -> this.cache.get(1L, loader));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<UserDto> follower = CompletableFuture.supplyAsync(() -> this.cache.get(1L, loader));
+        while (this.meterRegistry.get("cache.loads").tag("result", "coalesced").counter().count() < 1) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        ExecutionException leaderError = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        ExecutionException followerError = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, leaderError.getCause().getCause());
+        assertInstanceOf(IllegalStateException.class, followerError.getCause().getCause());
+        verify(this.redisCache, never()).put(any(), any());
+    }
+
+    @Test
+    void get_WithLoader_ShouldRefreshInBackground_AndServeCachedValue_WhenEntryIsDue() {
+        //огромный коэффициент: запись всегда считается близкой к истечению
+        this.cache = createCache(new CacheExpiry(Duration.ofSeconds(40), Duration.ofSeconds(5), 0, 1e12));
+        AtomicInteger loads = new AtomicInteger();
+        Callable<UserDto> loader = () -> {
+            Thread.sleep(1);
+            return UserDto.builder().id(1L).firstName("v" + loads.incrementAndGet()).build();
+        };
+
+        assertEquals("v1", this.cache.get(1L, loader).getFirstName());
+        assertEquals("v1", this.cache.get(1L, loader).getFirstName());
+        assertEquals("v2", this.cache.get(1L, loader).getFirstName());
+
+        assertEquals(2, this.meterRegistry.get("cache.lookups").tag("result", "refresh_ahead").counter().count());
+        assertEquals(1, this.meterRegistry.get("cache.lookups").tag("result", "miss").counter().count());
+        assertEquals(2, this.meterRegistry.get("cache.loads").tag("result", "refreshed").counter().count());
+    }
+
+    @Test
+    void get_WithLoader_ShouldNotRefresh_WhenRefreshAheadDisabled() {
+        AtomicInteger loads = new AtomicInteger();
+        Callable<UserDto> loader = () -> {
+            loads.incrementAndGet();
+            return this.userDto;
+        };
+
+        this.cache.get(1L, loader);
+        this.cache.get(1L, loader);
+
+        assertEquals(1, loads.get());
+        assertEquals(1, this.meterRegistry.get("cache.lookups").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void get_ShouldSkipLocalValue_OutlivingRedisEntry() {
+        this.cache.putLocal(1L, new CacheEntry(this.userDto, System.currentTimeMillis() - 1, 0));
+
+        assertNull(this.cache.get(1L));
+        verify(this.redisCache).get(1L);
+    }
+
+    @Test
+    void newEntry_ShouldSpreadTtl_WithinJitter() {
+        CacheExpiry cacheExpiry = new CacheExpiry(Duration.ofSeconds(40), Duration.ofSeconds(5), 0.5, 0);
+        long now = System.currentTimeMillis();
+
+        Set<Long> ttls = new HashSet<>();
+        for(int i = 0; i < 100; i++){
+            long ttl = cacheExpiry.entry(this.userDto, 0).expiresAt() - now;
+            assertTrue(ttl >= 20_000 && ttl <= 61_000, "ttl " + ttl);
+            ttls.add(ttl / 1000);
+        }
+        assertTrue(ttls.size() > 10);
+    }
+
+    @Test
+    void newEntry_ShouldUseNegativeTtl_ForNotFoundMarker() {
+        CacheExpiry cacheExpiry = new CacheExpiry(Duration.ofSeconds(40), Duration.ofSeconds(5), 0, 0);
+
+        long ttl = cacheExpiry.entry(CacheMarker.NOT_FOUND, 0).expiresAt() - System.currentTimeMillis();
+
+        assertTrue(ttl > 0 && ttl <= 5_000, "ttl " + ttl);
+    }
+
+    @Test
+    void evict_ShouldEvictBothLevelsAndBroadcast() {
+        this.cache.put(1L, this.userDto);
+
+        this.cache.evict(1L);
+
+        verify(this.redisCache).evict(1L);
+        verify(this.cacheInvalidationPublisher).publish("user", "1");
+        assertNull(this.cache.get(1L));
+    }
+
+    @Test
+    void evictLocal_ShouldNotTouchRedisOrBroadcast() {
+        this.cache.put(1L, this.userDto);
+
+        this.cache.evictLocal("1");
+
+        this.cache.get(1L);
+
+        verify(this.redisCache, never()).evict(any());
+        verify(this.redisCache).get(1L);
+        verifyNoInteractions(this.cacheInvalidationPublisher);
+    }
+
+    @Test
+    void get_WithLoader_ShouldStampVersion_WhenVersioningEnabled() {
+        this.cache = createVersionedCache();
+        UserDto versioned = UserDto.builder().id(1L).firstName("John").version(2L).build();
+        when(this.cacheVersionGuard.put(any(), any(), any(), anyLong())).thenReturn(true);
+
+        assertEquals(versioned, this.cache.get(1L, () -> versioned));
+        assertEquals(versioned, this.cache.get(1L).get());
+
+        verify(this.cacheVersionGuard).put(any(), any(), any(), eq(2L));
+        verify(this.redisCache, never()).put(any(), any());
+    }
+
+    @Test
+    void get_WithLoader_ShouldNotCacheValue_ReadBeforeNewerVersionWasCommitted() {
+        this.cache = createVersionedCache();
+        when(this.cacheVersionGuard.put(any(), any(), any(), anyLong())).thenReturn(false);
+
+        assertEquals(this.userDto, this.cache.get(1L, () -> this.userDto));
+
+        //в L1 значение тоже не попало: повторное чтение снова идёт в Redis
+        assertNull(this.cache.get(1L));
+        verify(this.redisCache, times(2)).get(1L);
+        assertEquals(1, this.meterRegistry.get("cache.loads").tag("result", "stale").counter().count());
+    }
+
+    @Test
+    void evict_WithVersion_ShouldRaiseFloorEvictLocalAndBroadcast() {
+        this.cache = createVersionedCache();
+        this.cache.putLocal(1L, this.cache.newEntry(this.userDto));
+
+        this.cache.evict(1L, 3L);
+
+        verify(this.cacheVersionGuard).invalidate(any(), eq(3L));
+        verify(this.redisCache, never()).evict(any());
+        verify(this.cacheInvalidationPublisher).publish("user", "1");
+        assertNull(this.cache.getLocal(1L));
+    }
+
+    @Test
+    void evict_WithVersion_ShouldFallBackToPlainEvict_WhenVersioningDisabled() {
+        this.cache.evict(1L, 3L);
+
+        verify(this.redisCache).evict(1L);
+        verifyNoInteractions(this.cacheVersionGuard);
+    }
+
+    //фоновое обновление выполняется в вызывающем потоке, чтобы тест был детерминированным
+    private TwoLevelCache createCache(CacheExpiry cacheExpiry) {
+        return new TwoLevelCache("user", Caffeine.newBuilder().maximumSize(10).build(),
+                this.redisCache, this.cacheInvalidationPublisher, null, cacheExpiry, null, Runnable::run, this.meterRegistry);
+    }
+
+    private TwoLevelCache createVersionedCache() {
+        when(this.redisCache.getCacheConfiguration()).thenReturn(RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(RedisSerializer.java())));
+        return new TwoLevelCache("user", Caffeine.newBuilder().maximumSize(10).build(),
+                this.redisCache, this.cacheInvalidationPublisher, null,
+                new CacheExpiry(Duration.ofSeconds(40), Duration.ofSeconds(5), 0, 0),
+                this.cacheVersionGuard, Runnable::run, this.meterRegistry);
+    }
+}
@@ -0,0 +1,97 @@
+package ru.stroy1click.user.unit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import ru.stroy1click.user.cache.CacheMarker;
+import ru.stroy1click.user.cache.UserCache;
+import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.exception.NotFoundException;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserCacheUnitTest {
+
+    private ConcurrentMapCacheManager cacheManager;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private UserCache userCache;
+
+    private UserDto userDto;
+
+    @BeforeEach
+    void setUp() {
+        this.cacheManager = new ConcurrentMapCacheManager(UserCache.USER, UserCache.EMAIL);
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.userCache = new UserCache(this.cacheManager, this.meterRegistry);
+        this.userDto = UserDto.builder().id(1L).firstName("John").email("test@mail.com").build();
+    }
+
+    @Test
+    void getByEmail_ShouldStoreUserOnceAndIdInIndex() {
+        UserDto result = this.userCache.getByEmail("test@mail.com", () -> Optional.of(this.userDto),
+                id -> fail(), () -> fail());
+
+        assertEquals(this.userDto, result);
+        assertEquals(1L, this.cacheManager.getCache(UserCache.EMAIL).get("test@mail.com").get());
+        assertEquals(this.userDto, this.cacheManager.getCache(UserCache.USER).get(1L).get());
+    }
+
+    @Test
+    void getByEmail_ShouldLoadById_WhenOnlyIndexIsCached() {
+        this.cacheManager.getCache(UserCache.EMAIL).put("test@mail.com", 1);
+
+        UserDto result = this.userCache.getByEmail("test@mail.com", () -> fail(), id -> {
+            assertEquals(1L, id);
+            return Optional.of(this.userDto);
+        }, () -> fail());
+
+        assertEquals(this.userDto, result);
+    }
+
+    @Test
+    void getByEmail_ShouldEvictIndex_WhenIndexedUserIsGone() {
+        this.cacheManager.getCache(UserCache.EMAIL).put("test@mail.com", 1L);
+
+        assertThrows(NotFoundException.class, () -> this.userCache.getByEmail("test@mail.com", () -> fail(),
+                id -> Optional.empty(), () -> new NotFoundException("gone")));
+        assertNull(this.cacheManager.getCache(UserCache.EMAIL).get("test@mail.com"));
+    }
+
+    @Test
+    void getById_ShouldCacheAbsence_AndAnswerRepeatedLookupsWithoutLoading() {
+        AtomicInteger loads = new AtomicInteger();
+
+        for(int i = 0; i < 3; i++){
+            assertThrows(NotFoundException.class, () -> this.userCache.getById(2L, id -> {
+                loads.incrementAndGet();
+                return Optional.empty();
+            }, () -> new NotFoundException("not found")));
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(CacheMarker.NOT_FOUND, this.cacheManager.getCache(UserCache.USER).get(2L).get());
+        assertEquals(1, this.meterRegistry.get("cache.negative").tag("result", "stored").counter().count());
+        assertEquals(2, this.meterRegistry.get("cache.negative").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void getByEmail_ShouldCacheAbsentEmail() {
+        AtomicInteger loads = new AtomicInteger();
+
+        for(int i = 0; i < 2; i++){
+            assertThrows(NotFoundException.class, () -> this.userCache.getByEmail("absent@mail.com", () -> {
+                loads.incrementAndGet();
+                return Optional.empty();
+            }, id -> fail(), () -> new NotFoundException("not found")));
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(CacheMarker.NOT_FOUND, this.cacheManager.getCache(UserCache.EMAIL).get("absent@mail.com").get());
+    }
+}
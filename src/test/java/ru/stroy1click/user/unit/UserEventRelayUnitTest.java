@@ -0,0 +1,132 @@
+package ru.stroy1click.user.unit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.stroy1click.user.dto.UserEventDto;
+import ru.stroy1click.user.entity.UserEvent;
+import ru.stroy1click.user.mapper.impl.UserEventMapperImpl;
+import ru.stroy1click.user.model.UserEventType;
+import ru.stroy1click.user.outbox.InMemoryUserEventPublisher;
+import ru.stroy1click.user.outbox.UserEventPublisher;
+import ru.stroy1click.user.outbox.UserEventRelay;
+import ru.stroy1click.user.properties.OutboxProperties;
+import ru.stroy1click.user.repository.UserEventRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class UserEventRelayUnitTest {
+
+    @Mock
+    private UserEventRepository userEventRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private final OutboxProperties outboxProperties = new OutboxProperties();
+
+    private InMemoryUserEventPublisher publisher;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private UserEventRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        this.outboxProperties.setBatchSize(2);
+        this.publisher = new InMemoryUserEventPublisher(this.outboxProperties);
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.relay = newRelay(this.publisher);
+
+        when(this.transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> invocation.getArgument(0, TransactionCallback.class).doInTransaction(null));
+        when(this.userEventRepository.tryLockRelay(anyLong())).thenReturn(true);
+    }
+
+    @Test
+    void relay_ShouldAssignPositionsAfterLast_InIdOrder_UntilBatchIsNotFull() {
+        UserEvent first = event(10L, UserEventType.CREATED);
+        UserEvent second = event(11L, UserEventType.UPDATED);
+        UserEvent third = event(12L, UserEventType.DELETED);
+        when(this.userEventRepository.findUnpublished(2))
+                .thenReturn(List.of(first, second))
+                .thenReturn(List.of(third));
+        when(this.userEventRepository.findLastPosition()).thenReturn(7L, 9L);
+
+        this.relay.relay();
+
+        assertEquals(List.of(8L, 9L, 10L), this.publisher.getPublished().stream().map(UserEventDto::position).toList());
+        assertEquals(List.of(UserEventType.CREATED, UserEventType.UPDATED, UserEventType.DELETED),
+                this.publisher.getPublished().stream().map(UserEventDto::type).toList());
+        assertNotNull(first.getPublishedAt());
+        assertNotNull(third.getPublishedAt());
+        assertEquals(3, this.meterRegistry.counter("outbox.published").count());
+        verify(this.transactionTemplate, times(2)).execute(any());
+    }
+
+    @Test
+    void relay_ShouldSkip_WhenAnotherNodeHoldsLock() {
+        when(this.userEventRepository.tryLockRelay(anyLong())).thenReturn(false);
+
+        this.relay.relay();
+
+        assertTrue(this.publisher.getPublished().isEmpty());
+        verify(this.userEventRepository, never()).findUnpublished(anyInt());
+    }
+
+    @Test
+    void relay_ShouldSwallowPublishFailure_AndLeaveEventsForNextRun() {
+        UserEventPublisher failing = mock(UserEventPublisher.class);
+        doThrow(new IllegalStateException("broker is down")).when(failing).publish(anyList());
+        when(this.userEventRepository.findUnpublished(2)).thenReturn(List.of(event(10L, UserEventType.CREATED)));
+
+        assertDoesNotThrow(() -> newRelay(failing).relay());
+        assertEquals(0, this.meterRegistry.counter("outbox.published").count());
+    }
+
+    @Test
+    void cleanup_ShouldDeleteInBatches_UnderRelayLock() {
+        when(this.userEventRepository.deletePublishedBefore(any(), eq(2))).thenReturn(2, 1);
+
+        this.relay.cleanup();
+
+        verify(this.userEventRepository, times(2)).tryLockRelay(anyLong());
+        verify(this.userEventRepository, times(2)).deletePublishedBefore(
+                argThat(before -> before.isBefore(Instant.now().minus(Duration.ofDays(6)))), eq(2));
+        assertEquals(3, this.meterRegistry.counter("outbox.deleted").count());
+    }
+
+    @Test
+    void cleanup_ShouldSkip_WhenAnotherNodeHoldsLock() {
+        when(this.userEventRepository.tryLockRelay(anyLong())).thenReturn(false);
+
+        this.relay.cleanup();
+
+        verify(this.userEventRepository, never()).deletePublishedBefore(any(), anyInt());
+    }
+
+    private UserEventRelay newRelay(UserEventPublisher publisher) {
+        return new UserEventRelay(this.userEventRepository, new UserEventMapperImpl(), publisher,
+                this.transactionTemplate, this.outboxProperties, this.meterRegistry);
+    }
+
+    private static UserEvent event(Long id, UserEventType type) {
+        return UserEvent.builder()
+                .id(id)
+                .userId(1L)
+                .type(type)
+                .createdAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,85 @@
+package ru.stroy1click.user.unit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.model.Role;
+import ru.stroy1click.user.model.UserDataFormat;
+import ru.stroy1click.user.repository.UserRepository;
+import ru.stroy1click.user.service.impl.UserExportServiceImpl;
+import ru.stroy1click.user.util.AcceptEncodingUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+public class UserExportServiceUnitTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private UserExportServiceImpl userExportService;
+
+    private final AtomicBoolean streamClosed = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        this.userExportService = new UserExportServiceImpl(this.userRepository, this.objectMapper);
+
+        when(this.userRepository.streamAllAfter(10L)).thenReturn(Stream.of(
+                new UserSummaryDto(11L, "John", "Doe", "john@mail.com", true, Role.ROLE_USER),
+                new UserSummaryDto(12L, "Jane", "Doe, Jr.", "jane@mail.com", false, Role.ROLE_USER)
+        ).onClose(() -> this.streamClosed.set(true)));
+    }
+
+    @Test
+    void export_ShouldWriteNdjson_OneUserPerLine() throws Exception {
+        List<String> lines = export(UserDataFormat.NDJSON);
+
+        assertEquals(2, lines.size());
+        assertEquals(11, this.objectMapper.readTree(lines.get(0)).get("id").asLong());
+        assertEquals("jane@mail.com", this.objectMapper.readTree(lines.get(1)).get("email").asText());
+        assertFalse(lines.get(0).contains("password"));
+        assertTrue(this.streamClosed.get());
+    }
+
+    @Test
+    void export_ShouldWriteCsv_WithHeaderAndQuotedValues() throws Exception {
+        List<String> lines = export(UserDataFormat.CSV);
+
+        assertEquals(List.of(
+                "id,firstName,lastName,email,emailConfirmed,role",
+                "11,John,Doe,john@mail.com,true,ROLE_USER",
+                "12,Jane,\"Doe, Jr.\",jane@mail.com,false,ROLE_USER"
+        ), lines);
+        assertTrue(this.streamClosed.get());
+    }
+
+    @Test
+    void acceptsGzip_ShouldHonorExplicitRefusalAndWholeTokens() {
+        assertTrue(AcceptEncodingUtils.accepts("br, gzip;q=0.5", "gzip"));
+        assertTrue(AcceptEncodingUtils.accepts("*", "gzip"));
+        assertFalse(AcceptEncodingUtils.accepts("gzip;q=0", "gzip"));
+        assertFalse(AcceptEncodingUtils.accepts("GZIP; Q=0.000, *", "gzip"));
+        assertFalse(AcceptEncodingUtils.accepts("x-gzip, deflate", "gzip"));
+        assertFalse(AcceptEncodingUtils.accepts("*;q=0", "gzip"));
+        assertFalse(AcceptEncodingUtils.accepts(null, "gzip"));
+    }
+
+    private List<String> export(UserDataFormat format) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        this.userExportService.export(10L, format, output);
+        return output.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+}
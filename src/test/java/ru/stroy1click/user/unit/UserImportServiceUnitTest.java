@@ -0,0 +1,214 @@
+package ru.stroy1click.user.unit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.MessageSource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.stroy1click.user.cache.CacheBatchOperations;
+import ru.stroy1click.user.cache.EmailBloomFilter;
+import ru.stroy1click.user.entity.User;
+import ru.stroy1click.user.mapper.impl.UserMapperImpl;
+import ru.stroy1click.user.model.UserDataFormat;
+import ru.stroy1click.user.properties.ImportProperties;
+import ru.stroy1click.user.repository.UserRepository;
+import ru.stroy1click.user.service.PasswordHashService;
+import ru.stroy1click.user.service.UserEventService;
+import ru.stroy1click.user.service.impl.UserImportServiceImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class UserImportServiceUnitTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private CacheBatchOperations cacheBatchOperations;
+
+    @Mock
+    private EmailBloomFilter emailBloomFilter;
+
+    @Mock
+    private PasswordHashService passwordHashService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private MessageSource messageSource;
+
+    @Mock
+    private UserEventService userEventService;
+
+    private ValidatorFactory validatorFactory;
+
+    private UserImportServiceImpl userImportService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        this.validatorFactory = Validation.buildDefaultValidatorFactory();
+
+        ImportProperties importProperties = new ImportProperties();
+        importProperties.setBatchSize(2);
+        this.userImportService = new UserImportServiceImpl(this.userRepository, new UserMapperImpl(),
+                this.cacheBatchOperations, this.emailBloomFilter, this.passwordHashService, this.userEventService,
+                this.transactionTemplate, this.entityManager,
+                this.validatorFactory.getValidator(), this.messageSource, importProperties, this.objectMapper);
+
+        doAnswer(invocation -> {
+            invocation.getArgument(0, Consumer.class).accept(null);
+            return null;
+        }).when(this.transactionTemplate).executeWithoutResult(any());
+        when(this.entityManager.unwrap(Session.class)).thenReturn(this.session);
+        when(this.passwordHashService.encodeAll(anyList())).thenAnswer(invocation ->
+                invocation.getArgument(0, List.class).stream().map(password -> "hash:" + password).toList());
+        AtomicLong ids = new AtomicLong();
+        when(this.userRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<User> users = invocation.getArgument(0);
+            users.forEach(user -> user.setId(ids.incrementAndGet()));
+            return users;
+        });
+        when(this.emailBloomFilter.mightContain(anyString())).thenReturn(true);
+        when(this.messageSource.getMessage(eq("error.details.already_exist"), any(), any())).thenReturn("exists");
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.validatorFactory.close();
+    }
+
+    @Test
+    void importUsers_ShouldInsertInBatches_AndReportEveryLine() throws Exception {
+        when(this.userRepository.findExistingEmails(anyCollection())).thenReturn(List.of("taken@mail.com"));
+        String input = """
+                {"firstName":"John","lastName":"Doe","email":"john@mail.com","password":"secret","emailConfirmed":true,"role":"ROLE_USER"}
+                {"firstName":"Kate","lastName":"Doe","email":"taken@mail.com","password":"secret","emailConfirmed":true,"role":"ROLE_USER"}
+                not json
+                {"firstName":"J","lastName":"Doe","email":"short@mail.com","password":"secret","emailConfirmed":true,"role":"ROLE_USER"}
+                {"firstName":"Jane","lastName":"Doe","email":"jane@mail.com","password":"secret","emailConfirmed":false,"role":"ROLE_USER"}
+                """;
+
+        List<String> lines = importUsers(input, UserDataFormat.NDJSON);
+
+        assertEquals(5, lines.size());
+        assertEquals("CREATED", this.objectMapper.readTree(lines.get(0)).get("status").asText());
+        assertEquals("exists", this.objectMapper.readTree(lines.get(1)).get("error").asText());
+        assertEquals("FAILED", this.objectMapper.readTree(lines.get(2)).get("status").asText());
+        assertEquals("FAILED", this.objectMapper.readTree(lines.get(3)).get("status").asText());
+        assertEquals(5, this.objectMapper.readTree(lines.get(4)).get("line").asLong());
+        assertEquals(2, this.objectMapper.readTree(lines.get(4)).get("id").asLong());
+        verify(this.userRepository, times(2)).saveAll(anyList());
+        verify(this.session, times(2)).setJdbcBatchSize(2);
+        verify(this.emailBloomFilter).putAll(List.of("john@mail.com"));
+        verify(this.emailBloomFilter).putAll(List.of("jane@mail.com"));
+        verify(this.cacheBatchOperations).multiEvict(Map.of("user", List.of(1L), "email-id", List.of("john@mail.com")));
+    }
+
+    @Test
+    void importUsers_ShouldParseCsv_AndRejectDuplicatesWithinFile() throws Exception {
+        when(this.userRepository.findExistingEmails(anyCollection())).thenReturn(List.of());
+        String input = """
+                email,firstName,lastName,password,emailConfirmed,role
+                john@mail.com,John,Doe,"se,cret",true,ROLE_USER
+                john@mail.com,John,Doe,secret,true,ROLE_USER
+                jane@mail.com,Jane,Doe,secret,yes,ROLE_USER
+                """;
+
+        List<String> lines = importUsers(input, UserDataFormat.CSV);
+
+        assertEquals(3, lines.size());
+        assertEquals(2, this.objectMapper.readTree(lines.get(0)).get("line").asLong());
+        assertEquals("CREATED", this.objectMapper.readTree(lines.get(0)).get("status").asText());
+        assertEquals("exists", this.objectMapper.readTree(lines.get(1)).get("error").asText());
+        assertEquals("emailConfirmed must be true or false, got 'yes'",
+                this.objectMapper.readTree(lines.get(2)).get("error").asText());
+        verify(this.passwordHashService).encodeAll(List.of("se,cret"));
+    }
+
+    @Test
+    void importUsers_ShouldRetryRowByRow_WhenEmailTakenConcurrently() throws Exception {
+        when(this.userRepository.findExistingEmails(anyCollection())).thenReturn(List.of());
+        //email заняли между проверкой и вставкой: пакет с ним падает на flush
+        List<User> pending = new ArrayList<>();
+        when(this.userRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<User> users = invocation.getArgument(0);
+            pending.clear();
+            pending.addAll(users);
+            users.forEach(user -> user.setId(user.getEmail().startsWith("race") ? 100L : 1L));
+            return users;
+        });
+        doAnswer(invocation -> {
+            if(pending.stream().anyMatch(user -> user.getEmail().startsWith("race"))){
+                throw new DataIntegrityViolationException("users_email_key");
+            }
+            return null;
+        }).when(this.userRepository).flush();
+        String input = """
+                {"firstName":"John","lastName":"Doe","email":"john@mail.com","password":"secret","emailConfirmed":true,"role":"ROLE_USER"}
+                {"firstName":"Race","lastName":"Doe","email":"race@mail.com","password":"secret","emailConfirmed":true,"role":"ROLE_USER"}
+                """;
+
+        List<String> lines = importUsers(input, UserDataFormat.NDJSON);
+
+        assertEquals(2, lines.size());
+        assertEquals("CREATED", this.objectMapper.readTree(lines.get(0)).get("status").asText());
+        assertEquals(1, this.objectMapper.readTree(lines.get(0)).get("id").asLong());
+        assertEquals("exists", this.objectMapper.readTree(lines.get(1)).get("error").asText());
+        verify(this.transactionTemplate, times(3)).executeWithoutResult(any());
+        verify(this.emailBloomFilter).putAll(List.of("john@mail.com"));
+    }
+
+    @Test
+    void importUsers_ShouldRejectOverlongLine_AndContinueWithNextOne() throws Exception {
+        when(this.userRepository.findExistingEmails(anyCollection())).thenReturn(List.of());
+        //загрузка без переводов строк не должна целиком собираться в одну строку
+        String input = "x".repeat(100_000) + "\r\n"
+                + "{\"firstName\":\"John\",\"lastName\":\"Doe\",\"email\":\"john@mail.com\",\"password\":\"secret\","
+                + "\"emailConfirmed\":true,\"role\":\"ROLE_USER\"}\r\n";
+
+        List<String> lines = importUsers(input, UserDataFormat.NDJSON);
+
+        assertEquals(2, lines.size());
+        assertEquals("Line is longer than 8192 characters", this.objectMapper.readTree(lines.get(0)).get("error").asText());
+        assertEquals(2, this.objectMapper.readTree(lines.get(1)).get("line").asLong());
+        assertEquals("CREATED", this.objectMapper.readTree(lines.get(1)).get("status").asText());
+    }
+
+    private List<String> importUsers(String input, UserDataFormat format) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        this.userImportService.importUsers(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), format, output
+        );
+        return output.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+}
@@ -6,19 +6,39 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
 import org.springframework.context.MessageSource;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.stroy1click.user.cache.CacheBatchOperations;
 import ru.stroy1click.user.cache.CacheClear;
+import ru.stroy1click.user.cache.CacheMarker;
+import ru.stroy1click.user.cache.EmailBloomFilter;
+import ru.stroy1click.user.cache.UserCache;
 import ru.stroy1click.user.dto.UserDto;
+import ru.stroy1click.user.dto.UserVersion;
+import ru.stroy1click.user.dto.UserSummaryDto;
+import ru.stroy1click.user.dto.UserSummaryPage;
 import ru.stroy1click.user.exception.NotFoundException;
+import ru.stroy1click.user.exception.PreconditionFailedException;
 import ru.stroy1click.user.mapper.UserMapper;
 import ru.stroy1click.user.model.Role;
 import ru.stroy1click.user.entity.User;
 import ru.stroy1click.user.repository.UserRepository;
+import ru.stroy1click.user.service.PasswordHashService;
+import ru.stroy1click.user.service.UserEventService;
 import ru.stroy1click.user.service.impl.UserServiceImpl;
+import ru.stroy1click.user.util.ETagUtils;
 
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -36,11 +56,26 @@ public class UserUnitTest {
     private CacheClear cacheClear;
 
     @Mock
-    private PasswordEncoder passwordEncoder;
+    private CacheBatchOperations cacheBatchOperations;
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private EmailBloomFilter emailBloomFilter;
+
+    @Mock
+    private PasswordHashService passwordHashService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
 
     @Mock
     private MessageSource messageSource;
 
+    @Mock
+    private UserEventService userEventService;
+
     @InjectMocks
     private UserServiceImpl userService;
 
@@ -50,6 +85,12 @@ public class UserUnitTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        when(this.transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<UserDto>>getArgument(0).doInTransaction(null));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(this.transactionTemplate).executeWithoutResult(any());
 
         this.user = User.builder()
                 .id(1L)
@@ -71,21 +112,24 @@ public class UserUnitTest {
 
     @Test
     void get_ShouldReturnUserDto_WhenUserExists() {
-        when(this.userRepository.findById(1L))
-                .thenReturn(Optional.of(this.user));
-        when(this.userMapper.toDto(this.user))
-                .thenReturn(this.userDto);
+        when(this.userCache.getById(eq(1L), any(), any()))
+                .thenAnswer(this::getByIdThroughCache);
+        when(this.userRepository.findDtoById(1L))
+                .thenReturn(Optional.of(this.userDto));
 
         UserDto result = this.userService.get(1L);
 
         assertNotNull(result);
         assertEquals(this.userDto, result);
-        verify(this.userRepository).findById(1L);
+        verify(this.userRepository).findDtoById(1L);
+        verifyNoInteractions(this.userMapper);
     }
 
     @Test
     void get_ShouldThrowNotFoundException_WhenUserNotFound() {
-        when(this.userRepository.findById(1L))
+        when(this.userCache.getById(eq(1L), any(), any()))
+                .thenAnswer(this::getByIdThroughCache);
+        when(this.userRepository.findDtoById(1L))
                 .thenReturn(Optional.empty());
         when(this.messageSource.getMessage(
                 eq("error.user.not_found_id"),
@@ -101,31 +145,39 @@ public class UserUnitTest {
 
     @Test
     void create_ShouldEncodePasswordAndSaveUser() {
-        when(this.passwordEncoder.encode("password"))
+        when(this.passwordHashService.encode("password"))
                 .thenReturn("encoded");
         when(this.userMapper.toEntity(this.userDto))
                 .thenReturn(this.user);
+        when(this.userRepository.save(this.user))
+                .thenReturn(this.user);
+        when(this.userMapper.toDto(this.user))
+                .thenReturn(this.userDto);
 
         this.userService.create(this.userDto);
 
-        verify(this.passwordEncoder).encode("password");
+        verify(this.passwordHashService).encode("password");
+        verify(this.emailBloomFilter).put("test@mail.com");
         verify(this.userRepository).save(this.user);
+        verify(this.cacheClear).clearUserById(1L, 0L);
+        verify(this.cacheClear).clearEmail("test@mail.com");
     }
 
     @Test
     void update_ShouldUpdateUser_WhenUserExists() {
-        when(this.userRepository.findById(1L))
-                .thenReturn(Optional.of(this.user));
+        when(this.userRepository.updateNameReturningVersion(1L, "John", "Doe"))
+                .thenReturn(Optional.of(4L));
 
         this.userService.update(1L, this.userDto);
 
-        verify(this.userRepository).save(any(User.class));
-        verify(this.cacheClear).clearEmail(this.userDto.getEmail());
+        verify(this.userRepository, never()).findDtoById(any());
+        verify(this.cacheClear).clearUserById(1L, 4L);
+        verify(this.cacheClear, never()).clearEmail(any());
     }
 
     @Test
     void update_ShouldThrowNotFoundException_WhenUserNotFound() {
-        when(this.userRepository.findById(1L))
+        when(this.userRepository.updateNameReturningVersion(1L, "John", "Doe"))
                 .thenReturn(Optional.empty());
         when(this.messageSource.getMessage(
                 eq("error.user.not_found_id"),
@@ -139,20 +191,61 @@ public class UserUnitTest {
         );
     }
 
+    @Test
+    void update_WithExpectedVersion_ShouldReturnNewVersion_WhenVersionMatches() {
+        when(this.userRepository.updateNameIfVersionReturningVersion(1L, "John", "Doe", List.of(4L)))
+                .thenReturn(Optional.of(5L));
+
+        assertEquals(5L, this.userService.update(1L, this.userDto, List.of(4L)));
+
+        verify(this.userRepository, never()).updateNameReturningVersion(any(), any(), any());
+        verify(this.userRepository, never()).existsById(any());
+        verify(this.cacheClear).clearUserById(1L, 5L);
+    }
+
+    @Test
+    void update_WithExpectedVersion_ShouldThrowPreconditionFailed_WhenUserChanged() {
+        when(this.userRepository.updateNameIfVersionReturningVersion(1L, "John", "Doe", List.of(3L)))
+                .thenReturn(Optional.empty());
+        when(this.userRepository.existsById(1L)).thenReturn(true);
+
+        Assertions.assertThrows(
+                PreconditionFailedException.class,
+                () -> this.userService.update(1L, this.userDto, List.of(3L))
+        );
+        //If-Match без версий этого пользователя отклоняется без записи
+        Assertions.assertThrows(
+                PreconditionFailedException.class,
+                () -> this.userService.update(1L, this.userDto, List.of())
+        );
+        verify(this.userRepository, times(1)).updateNameIfVersionReturningVersion(any(), any(), any(), any());
+        verify(this.cacheClear, never()).clearUserById(any(), anyLong());
+    }
+
+    @Test
+    void etag_ShouldCarryIdAndVersion_AndMatchStrongly() {
+        assertEquals("\"1-4\"", ETagUtils.of(1L, 4L));
+        assertEquals(List.of(4L, 6L), ETagUtils.versions(1L, "\"1-4\", W/\"1-5\", \"2-7\", \"1-6\""));
+        assertEquals(List.of(), ETagUtils.versions(1L, "\"abc\""));
+        assertNull(ETagUtils.versions(1L, "*"));
+        assertNull(ETagUtils.versions(1L, null));
+    }
+
     @Test
     void delete_ShouldDeleteUserAndClearCache_WhenUserExists() {
-        when(this.userRepository.findById(1L))
-                .thenReturn(Optional.of(this.user));
+        when(this.userRepository.deleteByIdReturningEmail(1L))
+                .thenReturn(Optional.of("test@mail.com"));
 
         this.userService.delete(1L);
 
-        verify(this.userRepository).deleteById(1L);
-        verify(this.cacheClear).clearEmail(this.user.getEmail());
+        verify(this.userRepository, never()).findDtoById(any());
+        verify(this.cacheClear).clearUserById(1L);
+        verify(this.cacheClear).clearEmail("test@mail.com");
     }
 
     @Test
     void delete_ShouldThrowNotFoundException_WhenUserNotFound() {
-        when(this.userRepository.findById(1L))
+        when(this.userRepository.deleteByIdReturningEmail(1L))
                 .thenReturn(Optional.empty());
         when(this.messageSource.getMessage(
                 eq("error.user.not_found_id"),
@@ -168,21 +261,23 @@ public class UserUnitTest {
 
     @Test
     void getByEmail_ShouldReturnUserDto_WhenUserExists() {
-        when(this.userRepository.findByEmail("test@mail.com"))
-                .thenReturn(Optional.of(this.user));
-        when(this.userMapper.toDto(this.user))
-                .thenReturn(this.userDto);
+        when(this.userCache.getByEmail(eq("test@mail.com"), any(), any(), any()))
+                .thenAnswer(this::getByEmailThroughCache);
+        when(this.userRepository.findDtoByEmail("test@mail.com"))
+                .thenReturn(Optional.of(this.userDto));
 
         UserDto result = this.userService.getByEmail("test@mail.com");
 
         Assertions.assertNotNull(result);
         Assertions.assertEquals(this.userDto, result);
-        verify(this.userRepository).findByEmail("test@mail.com");
+        verify(this.userRepository).findDtoByEmail("test@mail.com");
     }
 
     @Test
     void getByEmail_ShouldThrowNotFoundException_WhenUserNotFound() {
-        when(this.userRepository.findByEmail("test@mail.com"))
+        when(this.userCache.getByEmail(eq("test@mail.com"), any(), any(), any()))
+                .thenAnswer(this::getByEmailThroughCache);
+        when(this.userRepository.findDtoByEmail("test@mail.com"))
                 .thenReturn(Optional.empty());
         when(this.messageSource.getMessage(
                 eq("error.user.not_found_email"),
@@ -196,8 +291,67 @@ public class UserUnitTest {
         );
     }
 
+    @Test
+    void getAll_ShouldLoadOnlyCacheMisses_AndWriteThemBack() {
+        UserDto cachedUserDto = UserDto.builder().id(2L).email("cached@mail.com").build();
+        when(this.cacheBatchOperations.multiGet(Map.of("user", List.of(1L, 2L), "email-id", List.of("test@mail.com"))))
+                .thenReturn(Map.of(
+                        "user", Map.of(2L, cachedUserDto),
+                        "email-id", Map.of()
+                ));
+        when(this.userRepository.findAllDtoByIdInOrEmailIn(List.of(1L), List.of("test@mail.com")))
+                .thenReturn(List.of(this.userDto));
+
+        List<UserDto> result = this.userService.getAll(List.of(1L, 2L), List.of("test@mail.com"));
+
+        assertEquals(List.of(this.userDto, cachedUserDto), result);
+        verify(this.userRepository).findAllDtoByIdInOrEmailIn(List.of(1L), List.of("test@mail.com"));
+        verify(this.cacheBatchOperations).multiPut(Map.of(
+                "user", Map.of(1L, this.userDto),
+                "email-id", Map.of("test@mail.com", 1L)
+        ));
+    }
+
+    @Test
+    void getAll_ShouldResolveEmailsThroughIndex_WithoutDatabase() {
+        UserDto cachedUserDto = UserDto.builder().id(2L).email("cached@mail.com").build();
+        when(this.cacheBatchOperations.multiGet(Map.of("user", List.of(), "email-id", List.of("cached@mail.com"))))
+                .thenReturn(Map.of(
+                        "user", Map.of(),
+                        "email-id", Map.of("cached@mail.com", 2)
+                ));
+        when(this.cacheBatchOperations.multiGet(Map.of("user", List.of(2L))))
+                .thenReturn(Map.of("user", Map.of(2L, cachedUserDto)));
+
+        List<UserDto> result = this.userService.getAll(List.of(), List.of("cached@mail.com"));
+
+        assertEquals(List.of(cachedUserDto), result);
+        verifyNoInteractions(this.userRepository);
+    }
+
+    @Test
+    void getAll_ShouldSkipNegativeEntries_AndCacheAbsentKeys() {
+        when(this.cacheBatchOperations.multiGet(Map.of("user", List.of(3L, 4L), "email-id", List.of("absent@mail.com", "gone@mail.com"))))
+                .thenReturn(Map.of(
+                        "user", Map.of(3L, CacheMarker.NOT_FOUND),
+                        "email-id", Map.of("absent@mail.com", CacheMarker.NOT_FOUND)
+                ));
+        when(this.userRepository.findAllDtoByIdInOrEmailIn(List.of(4L), List.of("gone@mail.com")))
+                .thenReturn(List.of());
+
+        List<UserDto> result = this.userService.getAll(List.of(3L, 4L), List.of("absent@mail.com", "gone@mail.com"));
+
+        assertTrue(result.isEmpty());
+        verify(this.cacheBatchOperations).multiPut(Map.of(
+                "user", Map.of(4L, CacheMarker.NOT_FOUND),
+                "email-id", Map.of("gone@mail.com", CacheMarker.NOT_FOUND)
+        ));
+    }
+
     @Test
     void existsUserByEmail_ShouldReturnTrue_WhenUserExists() {
+        when(this.emailBloomFilter.mightContain("test@mail.com"))
+                .thenReturn(true);
         when(this.userRepository.existsUserByEmail("test@mail.com"))
                 .thenReturn(true);
 
@@ -207,21 +361,57 @@ public class UserUnitTest {
         verify(this.userRepository).existsUserByEmail("test@mail.com");
     }
 
+    @Test
+    void existsUserByEmail_ShouldSkipDatabase_WhenBloomFilterRejects() {
+        when(this.emailBloomFilter.mightContain("test@mail.com"))
+                .thenReturn(false);
+
+        Assertions.assertFalse(this.userService.existsUserByEmail("test@mail.com"));
+        verifyNoInteractions(this.userRepository);
+    }
+
+    @Test
+    void getPage_ShouldReturnNextAfterId_WhenMoreRowsExist() {
+        UserSummaryDto first = new UserSummaryDto(5L, "John", "Doe", "john@mail.com", true, Role.ROLE_USER);
+        UserSummaryDto second = new UserSummaryDto(9L, "Jane", "Doe", "jane@mail.com", true, Role.ROLE_USER);
+        when(this.userRepository.findPage(0L, Role.ROLE_USER, true, 2))
+                .thenReturn(List.of(first, second));
+        when(this.userRepository.findPage(5L, Role.ROLE_USER, true, 2))
+                .thenReturn(List.of(second));
+
+        UserSummaryPage page = this.userService.getPage(0L, Role.ROLE_USER, true, 1);
+        UserSummaryPage lastPage = this.userService.getPage(5L, Role.ROLE_USER, true, 1);
+
+        assertEquals(List.of(first), page.items());
+        assertEquals(5L, page.nextAfterId());
+        assertEquals(List.of(second), lastPage.items());
+        assertNull(lastPage.nextAfterId());
+    }
+
+    @Test
+    void search_ShouldReturnRepositoryResults() {
+        UserSummaryDto john = new UserSummaryDto(5L, "John", "Doe", "john@mail.com", true, Role.ROLE_USER);
+        when(this.userRepository.search("jo", 20))
+                .thenReturn(List.of(john));
+
+        assertEquals(List.of(john), this.userService.search("jo", 20));
+    }
+
     @Test
     void updateEmailConfirmedStatus_ShouldSetEmailConfirmedTrue() {
-        when(this.userRepository.findByEmail("test@mail.com"))
-                .thenReturn(Optional.of(this.user));
+        when(this.userRepository.confirmEmailReturningVersion("test@mail.com"))
+                .thenReturn(Optional.of(userVersion(1L, 2L)));
 
         this.userService.updateEmailConfirmedStatus("test@mail.com");
 
-        Assertions.assertTrue(this.user.getEmailConfirmed());
-        verify(this.cacheClear).clearUserById(this.user.getId());
-        verify(this.cacheClear).clearEmail("test@mail.com");
+        verify(this.userRepository, never()).findDtoByEmail(any());
+        verify(this.cacheClear).clearUserById(1L, 2L);
+        verify(this.cacheClear, never()).clearEmail(any());
     }
 
     @Test
     void updateEmailConfirmedStatus_ShouldThrowNotFoundException_WhenUserNotFound() {
-        when(this.userRepository.findByEmail("test@mail.com"))
+        when(this.userRepository.confirmEmailReturningVersion("test@mail.com"))
                 .thenReturn(Optional.empty());
         when(this.messageSource.getMessage(
                 eq("error.user.not_found_email"),
@@ -237,23 +427,26 @@ public class UserUnitTest {
 
     @Test
     void updatePassword_ShouldEncodeAndUpdatePassword() {
-        when(this.userRepository.findByEmail("test@mail.com"))
-                .thenReturn(Optional.of(this.user));
-        when(this.passwordEncoder.encode("newPass"))
+        when(this.passwordHashService.encode("newPass"))
                 .thenReturn("encodedNewPass");
+        when(this.userRepository.updatePasswordReturningVersion("test@mail.com", "encodedNewPass"))
+                .thenReturn(Optional.of(userVersion(1L, 3L)));
 
         this.userService.updatePassword("test@mail.com", "newPass");
-        assertEquals("encodedNewPass", this.user.getPassword());
-        verify(this.cacheClear).clearUserById(this.user.getId());
-        verify(this.cacheClear).clearEmail("test@mail.com");
+
+        verify(this.userRepository).updatePasswordReturningVersion("test@mail.com", "encodedNewPass");
+        verify(this.cacheClear).clearUserById(1L, 3L);
+        verify(this.cacheClear, never()).clearEmail(any());
     }
 
     @Test
     void updatePassword_ShouldThrowNotFoundException_WhenUserNotFound() {
-        when(this.userRepository.findByEmail("test@mail.com"))
+        when(this.passwordHashService.encode("newPass"))
+                .thenReturn("encodedNewPass");
+        when(this.userRepository.updatePasswordReturningVersion("test@mail.com", "encodedNewPass"))
                 .thenReturn(Optional.empty());
         when(this.messageSource.getMessage(
-                eq("error.user.not_found_id"),
+                eq("error.user.not_found_email"),
                 any(),
                 any(Locale.class)
         )).thenReturn("User not found");
@@ -263,4 +456,30 @@ public class UserUnitTest {
                 () -> this.userService.updatePassword("test@mail.com", "newPass")
         );
     }
-}
\ No newline at end of file
+
+    @SuppressWarnings("unchecked")
+    private UserDto getByIdThroughCache(InvocationOnMock invocation) {
+        Function<Long, Optional<UserDto>> loadById = invocation.getArgument(1);
+        return loadById.apply(invocation.getArgument(0)).orElseThrow(invocation.getArgument(2, Supplier.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private UserDto getByEmailThroughCache(InvocationOnMock invocation) throws Exception {
+        Callable<Optional<UserDto>> loadByEmail = invocation.getArgument(1);
+        return loadByEmail.call().orElseThrow(invocation.getArgument(3, Supplier.class));
+    }
+
+    private static UserVersion userVersion(Long id, Long version) {
+        return new UserVersion() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Long getVersion() {
+                return version;
+            }
+        };
+    }
+}